@@ -0,0 +1,213 @@
+package com.example.imageeditorjaden;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.imageio.ImageIO;
+
+/**
+ * Command-line batch mode that stamps one set of shapes onto many images
+ * without opening a window. Each image is decoded, drawn on with
+ * Java2DRenderer and encoded by a worker of a fork-join pool, so the work is
+ * spread over all cores and idle workers steal from busy ones. Only one image
+ * per worker is in memory at a time. Throughput and the time spent in each
+ * stage are printed at the end.
+ *
+ * Run it with: openImage --batch shapes-file images output-dir [options]
+ */
+public class BatchRender {
+    private static final String USAGE = "Usage: --batch <shapes-or-project-file> <image-directory-or-glob> <output-directory>"
+            + " [--threads N] [--format png|jpg]";
+    private static final String[] IMAGE_EXTENSIONS = {".png", ".jpg", ".jpeg", ".gif", ".bmp"};
+
+    private final ShapeStore shapes;
+    private final File outputDir;
+    private final String format;
+    private final LongAdder decodeNanos = new LongAdder(); // Summed over all workers
+    private final LongAdder renderNanos = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final AtomicInteger rendered = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public BatchRender(ShapeStore shapes, File outputDir, String format) {
+        this.shapes = shapes;
+        this.outputDir = outputDir;
+        this.format = format;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        String format = "png";
+        for (int i = 3; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                System.err.println("Missing value for " + option + "\n" + USAGE);
+                System.exit(2);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--format":
+                    format = value.toLowerCase();
+                    break;
+                default:
+                    System.err.println("Unknown option " + option + "\n" + USAGE);
+                    System.exit(2);
+            }
+        }
+
+        try {
+            ImageIO.setUseCache(false); // Encode in memory rather than through temp files shared by all threads
+            ShapeStore shapes = loadShapes(new File(args[0]));
+            List<Path> images = findImages(args[1]);
+            File outputDir = new File(args[2]);
+            if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+                throw new IOException("Cannot create " + outputDir);
+            }
+            BatchRender batch = new BatchRender(shapes, outputDir, format);
+            batch.run(images, threads);
+            System.exit(batch.failed.get() == 0 ? 0 : 1);
+        } catch (IOException | ExecutionException e) {
+            System.err.println("Batch render failed: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the shapes from a shape file or from a project.
+     *
+     * @param file A file written by Export Shapes or Save Project.
+     * @return The shapes.
+     */
+    static ShapeStore loadShapes(File file) throws IOException {
+        if (!ProjectFile.isProject(file)) {
+            return ShapeStore.load(file);
+        }
+        try (ProjectFile project = ProjectFile.open(file)) {
+            ShapeStore shapes = new ShapeStore(project.getShapeCount());
+            project.loadShapes(shapes);
+            return shapes;
+        }
+    }
+
+    /**
+     * Lists the images named by a directory or by a glob on file names, such
+     * as scans/*.jpg.
+     *
+     * @param pattern A directory or a path whose last part is a glob.
+     * @return The matching image files, sorted by name.
+     */
+    static List<Path> findImages(String pattern) throws IOException {
+        Path path = Paths.get(pattern);
+        Path directory = Files.isDirectory(path) ? path : path.toAbsolutePath().getParent();
+        String glob = Files.isDirectory(path) ? "*" : path.getFileName().toString();
+        List<Path> images = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, glob)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry) && isImage(entry)) {
+                    images.add(entry);
+                }
+            }
+        }
+        images.sort(null);
+        return images;
+    }
+
+    /**
+     * Renders every image on a pool of worker threads and prints a report.
+     *
+     * @param images  The images to stamp.
+     * @param threads The number of workers.
+     */
+    public void run(List<Path> images, int threads) throws InterruptedException, ExecutionException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        try {
+            // A parallel stream run inside the pool splits the list into work-stealing tasks on its workers
+            pool.submit(() -> images.parallelStream().forEach(this::process)).get();
+        } finally {
+            pool.shutdown();
+        }
+        report(System.nanoTime() - start, threads);
+    }
+
+    private void process(Path image) {
+        try {
+            long start = System.nanoTime();
+            BufferedImage decoded = ImageIO.read(image.toFile());
+            if (decoded == null) {
+                throw new IOException("No reader for " + image);
+            }
+            long decodedAt = System.nanoTime();
+
+            // JPEG has no alpha, so draw straight into an RGB image rather than converting afterwards
+            int type = format.equals("png") ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+            BufferedImage result = new BufferedImage(decoded.getWidth(), decoded.getHeight(), type);
+            Java2DRenderer.renderInto(result, shapes, decoded);
+            long renderedAt = System.nanoTime();
+
+            File output = new File(outputDir, baseName(image) + "." + format);
+            if (!ImageIO.write(result, format, output)) {
+                throw new IOException("No writer for " + format);
+            }
+            long encodedAt = System.nanoTime();
+
+            decodeNanos.add(decodedAt - start);
+            renderNanos.add(renderedAt - decodedAt);
+            encodeNanos.add(encodedAt - renderedAt);
+            bytesWritten.add(output.length());
+            rendered.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            System.err.println("Failed " + image + ": " + e.getMessage());
+        }
+    }
+
+    private void report(long wallNanos, int threads) {
+        int count = rendered.get();
+        double seconds = wallNanos / 1e9;
+        System.out.printf("Rendered %d images (%d failed) in %.2f s on %d threads: %.1f images/s%n",
+                count, failed.get(), seconds, threads, count / seconds);
+        if (count > 0) {
+            System.out.printf("Per image: decode %.1f ms, render %.1f ms, encode %.1f ms; %.1f MB written%n",
+                    decodeNanos.sum() / 1e6 / count, renderNanos.sum() / 1e6 / count,
+                    encodeNanos.sum() / 1e6 / count, bytesWritten.sum() / (1024.0 * 1024.0));
+        }
+    }
+
+    private static boolean isImage(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String baseName(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritablePixelFormat;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A document flattened at the native resolution of its background, rendered
+ * on demand a band of rows at a time so it can be streamed into an encoder.
+ * No band is larger than what the encoder asks for, so exporting never needs
+ * a raster of the whole image, and the result does not depend on the size of
+ * the window. Like the on-screen canvas, everything is composited over white.
+ *
+ * Capturing only copies the shapes; the background image is shared, as images
+ * are replaced rather than changed. Bands can be rendered on several threads
+ * at once, each with its own Java2D renderer.
+ */
+public class DocumentRaster implements ImageEncoder.RowSource {
+    private static final int BUCKET_ROWS = 64; // Rows per bucket of shape ids used to cull bands
+    private static final int WHITE = 0xffffffff;
+
+    // Per-worker scratch for background pixels, reused from band to band
+    private static final ThreadLocal<int[]> BACKGROUND_BUFFER = ThreadLocal.withInitial(() -> new int[0]);
+
+    private final ShapeStore shapes;
+    private final Image image;
+    private final TiledImage tiles;
+    private final int width, height;
+    private final long captureNanos;
+    private int[] bucketStarts, bucketIds; // Ids of the shapes touching each bucket, in stacking order
+
+    private DocumentRaster(ShapeStore shapes, Image image, TiledImage tiles, int width, int height, long captureNanos) {
+        this.shapes = shapes;
+        this.image = image;
+        this.tiles = tiles;
+        this.width = width;
+        this.height = height;
+        this.captureNanos = captureNanos;
+    }
+
+    /**
+     * Captures a document for export. Must be called on the thread that
+     * changes the shapes; the copy is the only work done here.
+     *
+     * @param shapes    The committed shapes.
+     * @param image     The background image, or null.
+     * @param tiles     The tiled background, used when image is null; may be null.
+     * @param width     The width of the export when there is no background.
+     * @param height    The height of the export when there is no background.
+     * @return The captured document.
+     */
+    public static DocumentRaster capture(ShapeStore shapes, Image image, TiledImage tiles, int width, int height) {
+        long start = System.nanoTime();
+        if (image != null) {
+            width = (int) image.getWidth();
+            height = (int) image.getHeight();
+        } else if (tiles != null) {
+            width = tiles.getWidth();
+            height = tiles.getHeight();
+        }
+        ShapeStore copy = shapes.copy();
+        return new DocumentRaster(copy, image, tiles, width, height, System.nanoTime() - start);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    /**
+     * @return The captured copy of the shapes, which nothing changes.
+     */
+    public ShapeStore getShapes() {
+        return shapes;
+    }
+
+    public boolean hasBackground() {
+        return image != null || tiles != null;
+    }
+
+    /**
+     * Gives the background alone, composited over white, for exports that
+     * draw the shapes themselves.
+     */
+    public ImageEncoder.RowSource background() {
+        return new ImageEncoder.RowSource() {
+            @Override
+            public void readRows(int y, int rows, int[] out, int offset) {
+                render(0, y, width, rows, out, offset, false);
+            }
+
+            @Override
+            public boolean isOpaque() {
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public boolean isOpaque() {
+        return true; // Composited over white
+    }
+
+    @Override
+    public void readRows(int y, int rows, int[] out, int offset) {
+        render(0, y, width, rows, out, offset, true);
+    }
+
+    /**
+     * Renders part of the document, e.g. the part of a large tiled document
+     * the paint bucket looks at. Like readRows, it may be called for several
+     * parts at once from different threads.
+     *
+     * @param x       The left edge of the part.
+     * @param y       The top edge of the part.
+     * @param columns The width of the part, which must lie within the document.
+     * @param rows    The height of the part.
+     * @param out     Receives the pixels, columns pixels per row.
+     * @param offset  Where the first pixel goes in out.
+     */
+    public void readRegion(int x, int y, int columns, int rows, int[] out, int offset) {
+        render(x, y, columns, rows, out, offset, true);
+    }
+
+    private void render(int x, int y, int columns, int rows, int[] out, int offset, boolean withShapes) {
+        Arrays.fill(out, offset, offset + rows * columns, WHITE);
+        BufferedImage band = ImageSaver.wrap(out, offset, columns, rows);
+        Graphics2D g = band.createGraphics();
+        try {
+            g.translate(-x, -y); // Draw in document coordinates
+            if (image != null || tiles != null) {
+                int[] background = backgroundBuffer(rows * columns);
+                readBackground(x, y, columns, rows, background);
+                g.drawImage(ImageSaver.wrap(background, 0, columns, rows), x, y, null); // Blended over white
+            }
+            if (!withShapes) {
+                return;
+            }
+            int[] ids = shapesTouching(y, y + rows);
+            new ShapeRenderer(new Java2DRenderer(g)).drawShapes(shapes, ids, ids.length, 0);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Copies the background pixels of columns x..x+columns-1 of rows
+     * y..y+rows-1 into out, a row of columns pixels at a time.
+     */
+    private void readBackground(int x, int y, int columns, int rows, int[] out) {
+        WritablePixelFormat<IntBuffer> format = PixelFormat.getIntArgbInstance();
+        if (image != null) {
+            image.getPixelReader().getPixels(x, y, columns, rows, format, out, 0, columns);
+            return;
+        }
+        Arrays.fill(out, 0, rows * columns, 0); // Tiles that fail to decode stay transparent
+        int size = TiledImage.TILE_SIZE;
+        for (int row = y / size; row <= (y + rows - 1) / size; row++) {
+            int top = Math.max(y, row * size);
+            int bottom = Math.min(y + rows, Math.min(height, (row + 1) * size));
+            for (int column = x / size; column <= (x + columns - 1) / size; column++) {
+                Image tile = tiles.getTile(column, row);
+                if (tile == null) {
+                    continue;
+                }
+                PixelReader reader = tile.getPixelReader();
+                int left = Math.max(x, column * size);
+                int right = Math.min(x + columns, column * size + (int) tile.getWidth());
+                if (right <= left) {
+                    continue;
+                }
+                reader.getPixels(left - column * size, top - row * size, right - left, bottom - top, format, out,
+                        (top - y) * columns + left - x, columns);
+            }
+        }
+    }
+
+    /**
+     * Collects the ids of the shapes whose padded bounds touch rows from..to,
+     * in stacking order.
+     */
+    private int[] shapesTouching(int from, int to) {
+        int[] starts = bucketStarts();
+        int firstBucket = from / BUCKET_ROWS;
+        int lastBucket = Math.min(starts.length - 2, (to - 1) / BUCKET_ROWS);
+        if (firstBucket == lastBucket) {
+            return Arrays.copyOfRange(bucketIds, starts[firstBucket], starts[firstBucket + 1]);
+        }
+        int[] ids = Arrays.copyOfRange(bucketIds, starts[firstBucket], starts[lastBucket + 1]);
+        Arrays.sort(ids); // Shapes spanning several buckets appear once per bucket
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (count == 0 || ids[i] != ids[count - 1]) {
+                ids[count++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Sorts shape ids into buckets of rows on first use, counting first so
+     * each bucket is a slice of one array.
+     */
+    private synchronized int[] bucketStarts() {
+        if (bucketStarts != null) {
+            return bucketStarts;
+        }
+        int buckets = Math.max(1, (height + BUCKET_ROWS - 1) / BUCKET_ROWS);
+        int count = shapes.size();
+        int[] firstBuckets = new int[count];
+        int[] lastBuckets = new int[count];
+        int[] starts = new int[buckets + 1];
+        double[] bounds = new double[4];
+        for (int id = 0; id < count; id++) {
+            shapes.bounds(id, bounds);
+            double pad = shapes.strokeReach(id) + 1; // Plus a pixel of antialiasing
+            double top = Math.max(0, Math.min(bounds[1], bounds[3]) - pad);
+            double bottom = Math.min(height - 1, Math.max(bounds[1], bounds[3]) + pad);
+            if (bottom < top) {
+                firstBuckets[id] = -1; // Entirely above or below the image
+                continue;
+            }
+            firstBuckets[id] = (int) top / BUCKET_ROWS;
+            lastBuckets[id] = (int) bottom / BUCKET_ROWS;
+            for (int bucket = firstBuckets[id]; bucket <= lastBuckets[id]; bucket++) {
+                starts[bucket + 1]++;
+            }
+        }
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            starts[bucket + 1] += starts[bucket];
+        }
+        int[] ids = new int[starts[buckets]];
+        int[] next = Arrays.copyOf(starts, buckets);
+        for (int id = 0; id < count; id++) {
+            for (int bucket = firstBuckets[id]; bucket >= 0 && bucket <= lastBuckets[id]; bucket++) {
+                ids[next[bucket]++] = id; // Ids go in increasing order, so each bucket is in stacking order
+            }
+        }
+        bucketIds = ids;
+        bucketStarts = starts;
+        return starts;
+    }
+
+    private static int[] backgroundBuffer(int length) {
+        int[] buffer = BACKGROUND_BUFFER.get();
+        if (buffer.length < length) {
+            buffer = new int[length];
+            BACKGROUND_BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+}
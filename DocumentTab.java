@@ -0,0 +1,344 @@
+package com.example.imageeditorjaden;
+
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.control.Tab;
+import javafx.scene.image.Image;
+import javafx.scene.layout.StackPane;
+import javafx.stage.Stage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Optional;
+
+/**
+ * One open document in its own tab: the canvases it is drawn on, the file it
+ * edits, its crash-recovery journal and its background loader. A hidden tab
+ * that holds nothing but an unedited image lets go of it, so memory is bounded
+ * by the shared ImageCache rather than by the number of tabs, and loads it
+ * again, usually straight from the cache, when it is shown.
+ */
+public class DocumentTab {
+    private final Tab tab;
+    private final Canvas canvas;
+    private final Canvas overlayCanvas;
+    private final DrawingCanvas drawingCanvas;
+    private final ImageLoader imageLoader = new ImageLoader();
+    private final DoubleProperty loadProgress = new SimpleDoubleProperty(0);
+    private final BooleanProperty isLoadShown = new SimpleBooleanProperty(false); // Progress is shown while decoding
+    private volatile File originalFile;
+    private OperationJournal journal; // Crash-recovery journal for originalFile
+    private volatile boolean isAutosaving = false;
+    private boolean isReleased = false; // The image was dropped while the tab was hidden
+
+    public DocumentTab() {
+        // A canvas for drawing, plus a transparent overlay for previews and selection
+        canvas = new Canvas(); // Sized while the tab is shown
+        overlayCanvas = new Canvas();
+        drawingCanvas = new DrawingCanvas(canvas, overlayCanvas);
+        overlayCanvas.widthProperty().bind(canvas.widthProperty());
+        overlayCanvas.heightProperty().bind(canvas.heightProperty());
+        tab = new Tab("Untitled", new StackPane(canvas, overlayCanvas));
+    }
+
+    public Tab getTab() {
+        return tab;
+    }
+
+    public DrawingCanvas getDrawingCanvas() {
+        return drawingCanvas;
+    }
+
+    public File getOriginalFile() {
+        return originalFile;
+    }
+
+    public ReadOnlyDoubleProperty loadProgressProperty() {
+        return loadProgress;
+    }
+
+    public ReadOnlyBooleanProperty loadShownProperty() {
+        return isLoadShown;
+    }
+
+    /**
+     * Tells whether the tab holds nothing yet, so a file can be opened in it
+     * instead of in a new tab.
+     *
+     * @return true if no file, project or drawing is open in the tab.
+     */
+    public boolean isBlank() {
+        return originalFile == null && !imageLoader.isLoading() && drawingCanvas.isEmpty() && !drawingCanvas.hasHistory();
+    }
+
+    /**
+     * Makes the canvas follow the window while the tab is shown, and loads the
+     * image again if it was dropped while hidden.
+     *
+     * @param stage The window the tab is shown in.
+     */
+    public void show(Stage stage) {
+        canvas.widthProperty().bind(stage.widthProperty());
+        canvas.heightProperty().bind(stage.heightProperty().subtract(180)); // Adjust for buttons, timer and tab headers
+        if (isReleased) {
+            isReleased = false;
+            openFile(originalFile);
+        }
+    }
+
+    /**
+     * Stops resizing the canvas with the window, so hidden tabs are not
+     * repainted, and drops the image if it can be loaded again as it is.
+     */
+    public void hide() {
+        canvas.widthProperty().unbind();
+        canvas.heightProperty().unbind();
+        if (originalFile != null && !imageLoader.isLoading() && !drawingCanvas.isDirty() && !drawingCanvas.hasHistory()) {
+            closeJournal(false); // Nothing was journaled, and show() opens it again
+            drawingCanvas.release();
+            isReleased = true;
+        }
+    }
+
+    /**
+     * Releases everything the tab holds once it is closed. Unsaved edits stay
+     * in the journal and are offered for recovery when the file is opened again.
+     */
+    public void close() {
+        imageLoader.cancel();
+        closeJournal(false);
+        drawingCanvas.release();
+        canvas.widthProperty().unbind();
+        canvas.heightProperty().unbind();
+    }
+
+    /**
+     * Opens an image file for editing. The file is decoded in the background,
+     * showing a preview first, unless it is still in the image cache; opening
+     * another file cancels the load. Once the image is in place, if a previous
+     * session left unsaved edits in the file's journal, the user is offered to
+     * recover them.
+     *
+     * @param file The image file to open.
+     */
+    public void openFile(File file) {
+        closeJournal(false); // Unsaved edits to the previous file stay recoverable
+        imageLoader.cancel();
+        drawingCanvas.setPlaceholder(null, 0, 0);
+        originalFile = file;
+        tab.setText(file.getName());
+        if (loadTiled(file)) {
+            isLoadShown.set(false);
+            startJournal(file, true);
+            return;
+        }
+
+        loadProgress.set(0);
+        isLoadShown.set(true);
+        imageLoader.load(file, new ImageLoader.Listener() {
+            @Override
+            public void previewReady(Image preview, int width, int height) {
+                drawingCanvas.setPlaceholder(preview, width, height);
+            }
+
+            @Override
+            public void progress(double fraction) {
+                loadProgress.set(fraction);
+            }
+
+            @Override
+            public void loaded(Image image) {
+                isLoadShown.set(false);
+                drawingCanvas.openBackground(image, null);
+                startJournal(file, true);
+            }
+
+            @Override
+            public void failed(Exception error) {
+                isLoadShown.set(false);
+                drawingCanvas.setPlaceholder(null, 0, 0);
+                javafx.scene.control.Alert alert = new javafx.scene.control.Alert(javafx.scene.control.Alert.AlertType.ERROR);
+                alert.setTitle("Open Image");
+                alert.setHeaderText(null);
+                alert.setContentText("Failed to open " + file.getName() + ": " + error.getMessage());
+                alert.showAndWait();
+            }
+        });
+    }
+
+    /**
+     * Opens a project file, replacing the document. Projects are not
+     * autosaved, so no image file is tracked while one is open.
+     *
+     * @param file The project file.
+     */
+    public void openProject(File file) {
+        closeJournal(false);
+        imageLoader.cancel();
+        isLoadShown.set(false);
+        originalFile = null;
+        tab.setText(file.getName());
+        try (ProjectFile project = ProjectFile.open(file)) {
+            drawingCanvas.loadProject(project);
+        } catch (IOException e) {
+            e.printStackTrace();
+            javafx.scene.control.Alert alert = new javafx.scene.control.Alert(javafx.scene.control.Alert.AlertType.ERROR);
+            alert.setTitle("Open Project");
+            alert.setHeaderText(null);
+            alert.setContentText("Failed to open " + file.getName() + ": " + e.getMessage());
+            alert.showAndWait();
+        }
+    }
+
+    /**
+     * Called once a second by the autosave timer, off the JavaFX thread.
+     * Syncs the journal and autosaves once the document has had unsaved
+     * changes and no input for a while, so the full image is only re-encoded
+     * once editing pauses.
+     *
+     * @param idleSeconds The idle time before unsaved changes are autosaved.
+     * @return The autosave status, for the label while the tab is shown.
+     */
+    String tick(long idleSeconds) {
+        drawingCanvas.syncJournal(); // Journal batches reach the disk at least once a second
+        if (originalFile == null || imageLoader.isLoading() || !drawingCanvas.isDirty()) {
+            return originalFile == null ? "Autosave: no file open" : "All changes saved";
+        }
+        long timeRemaining = Math.max(0, idleSeconds - drawingCanvas.getIdleMillis() / 1000);
+        if (timeRemaining == 0 && !isAutosaving) {
+            isAutosaving = true;
+            // Only the pixel grab needs the JavaFX thread; encoding runs in the background
+            Platform.runLater(this::saveImage);
+        }
+        return "Autosave in: " + timeRemaining + "s";
+    }
+
+    /**
+     * Saves the current drawing to the original file if it exists.
+     */
+    public void saveImage() {
+        if (originalFile != null) {
+            // Call the save method of the DrawingCanvas; it reports back once the file is written
+            drawingCanvas.saveImage(originalFile, error -> {
+                isAutosaving = false;
+                if (error != null) {
+                    notifyUser("Failed to autosave image: " + error.getMessage());
+                }
+            });
+        } else {
+            isAutosaving = false;
+        }
+    }
+
+    /**
+     * Saves the current drawing to another file. Once it is written, the
+     * document is saved to that file from then on, unless it is an SVG or PDF
+     * export, which cannot be opened again; until then the old file and its
+     * journal are left alone, so a failed save loses nothing.
+     *
+     * @param file The file to write.
+     */
+    public void saveImageAs(File file) {
+        boolean isExport = VectorExporter.supports(ImageEncoder.formatOf(file));
+        drawingCanvas.saveImage(file, error -> {
+            if (error == null && !isExport) {
+                setOriginalFile(file);
+            }
+        });
+    }
+
+    /**
+     * Sets the file the document is saved to, after Save As wrote it.
+     *
+     * @param file The new file.
+     */
+    private void setOriginalFile(File file) {
+        if (file.equals(originalFile)) {
+            return;
+        }
+        closeJournal(true); // Its edits now live in the newly saved file
+        this.originalFile = file;
+        tab.setText(file.getName());
+        startJournal(file, false);
+    }
+
+    /**
+     * Opens very large images as tiles so they are never decoded whole.
+     *
+     * @param file The image file.
+     * @return true if the image was loaded as tiles.
+     */
+    private boolean loadTiled(File file) {
+        if (!TiledImage.shouldTile(file)) {
+            return false;
+        }
+        try {
+            drawingCanvas.openBackground(null, TiledImage.open(file));
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void startJournal(File file, boolean offerRecovery) {
+        try {
+            journal = OperationJournal.open(OperationJournal.journalFileFor(file));
+            if (offerRecovery && journal.hasRecords() && confirmRecovery(file)) {
+                drawingCanvas.recoverFrom(journal); // Also sets the journal, knowing what a replay of it holds
+                return;
+            }
+            journal.discardBefore(journal.mark()); // Start from what is on disk
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeJournal(false);
+        }
+        drawingCanvas.setJournal(journal);
+    }
+
+    private void closeJournal(boolean delete) {
+        drawingCanvas.setJournal(null);
+        if (journal != null) {
+            try {
+                journal.close();
+                if (delete) {
+                    Files.deleteIfExists(journal.getFile().toPath());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            journal = null;
+        }
+    }
+
+    private boolean confirmRecovery(File file) {
+        javafx.scene.control.Alert alert = new javafx.scene.control.Alert(javafx.scene.control.Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Recover Changes");
+        alert.setHeaderText(null);
+        alert.setContentText("Unsaved changes to " + file.getName() + " were found from a previous session. Do you want to recover them?");
+        alert.getButtonTypes().setAll(javafx.scene.control.ButtonType.YES, javafx.scene.control.ButtonType.NO);
+        Optional<javafx.scene.control.ButtonType> result = alert.showAndWait();
+        return result.isPresent() && result.get() == javafx.scene.control.ButtonType.YES;
+    }
+
+    /**
+     * Displays a notification to the user.
+     *
+     * @param message The message to display in the alert.
+     */
+    private void notifyUser(String message) {
+        Platform.runLater(() -> {
+            javafx.scene.control.Alert alert = new javafx.scene.control.Alert(javafx.scene.control.Alert.AlertType.INFORMATION);
+            alert.setTitle("Autosave");
+            alert.setHeaderText(null);
+            alert.setContentText(message);
+            alert.showAndWait();
+        });
+    }
+}
@@ -1,38 +1,110 @@
 package com.example.imageeditorjaden;
 
+import javafx.animation.AnimationTimer;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage; // Import this class
+import javafx.scene.input.MouseButton;
 import javafx.scene.paint.Color;
-import javafx.embed.swing.SwingFXUtils;
-import java.awt.image.BufferedImage;
+import javafx.scene.shape.StrokeLineCap;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import javax.imageio.ImageIO;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 public class DrawingCanvas {
-    private Canvas canvas;
+    private Canvas canvas; // Committed content: background image and finished shapes
     private GraphicsContext gc;
+    private Canvas overlay; // Transparent canvas stacked on top for previews and highlights
+    private GraphicsContext overlayGc;
+    private ShapeRenderer committedRenderer; // Draws the shape model on the committed canvas
+    private ShapeRenderer overlayRenderer; // Draws previews and highlights on the overlay
+    private WritableImage committedLayer; // Cached raster of the committed content, taken while the view is at 1:1
+    private boolean isLayerValid = false;
     private double startX, startY;
     private Image currentImage;
+    private TiledImage currentTiles; // Background decoded tile by tile, used instead of currentImage for very large files
+    private Image placeholderImage; // Low resolution preview shown while the background is still loading
+    private double placeholderWidth, placeholderHeight; // Size the preview is stretched to
     private double lineWidth = 2; // Default line width
     private Color lineColor = Color.BLACK; // Default line color
-    private String currentShape; // Current shape to draw
+    private byte currentShape = ShapeStore.NONE; // Kind code of the current shape to draw
     private boolean isPenActive = false;
-    private List<ShapeData> shapes; // List to store shapes
+    private ShapeStore shapes = new ShapeStore(); // Columnar store of committed shapes
     private boolean isSelecting = false;
-    private ShapeData selectedShape = null; // Currently selected shape
+    private int selectedShape = -1; // Id of the currently selected shape, or -1
+    private ShapeIndex shapeIndex = new ShapeIndex(); // Grid used for hit testing
+    private final double[] boundsScratch = new double[4]; // Reused when indexing shapes
+    private final double[] previewBounds = new double[4]; // Area covered by the last preview frame
+    private boolean hasPreview = false;
+    private PenStroke activeStroke; // Points of the pen stroke being drawn
+    private int penPointsShown = 0; // Points of activeStroke already stroked on the overlay
+    private boolean hasPendingDrag = false; // A drag position is waiting for the next pulse
+    private double pendingDragX, pendingDragY; // Newest drag position since the last pulse
+    private final AnimationTimer dragPulse = new AnimationTimer() { // Runs once per JavaFX pulse while dragging
+        @Override
+        public void handle(long now) {
+            flushDrag();
+        }
+    };
+    private final Viewport viewport = new Viewport(); // Zoom and pan between the canvas and document space
+    private final double[] viewBounds = new double[4]; // Document area the canvas shows
+    private long[] visibleMask = new long[16]; // One bit per shape id that the view shows
+    private int[] visibleIds = new int[256]; // Ids of visible shapes in stacking order
+    private final IntConsumer markVisible = id -> visibleMask[id >>> 6] |= 1L << id;
+    private boolean isPanning = false;
+    private double panX, panY; // Screen position the view was last panned to
+    private boolean isViewChanged = false; // The view moved and waits for the next pulse to be repainted
+    private final AnimationTimer viewPulse = new AnimationTimer() { // Repaints zooms once per pulse
+        @Override
+        public void handle(long now) {
+            stop();
+            if (isViewChanged) {
+                refreshView();
+            }
+        }
+    };
+    private UndoManager history = new UndoManager(UndoManager.DEFAULT_MEMORY_BUDGET); // Edit log behind Undo/Redo
+    private boolean isReplaying = false; // True while undo/redo rebuilds the document
+    private final ImageSaver imageSaver = new ImageSaver(); // Encodes and writes saves off the FX thread
+    private ImageEncoder encoder = ImageEncoder.defaults(); // PNG and JPG settings for saves
+    private OperationJournal journal; // Crash-recovery log of edits since the last save, may be null
+    // History positions that a replay of the journal can undo down to and redo up to
+    private int journalFloor, journalCeiling;
+    private volatile int editCount = 0; // Journaled changes made so far
+    private volatile int savedEditCount = 0; // Value of editCount when the last save was grabbed
+    private volatile long lastInputNanos = System.nanoTime(); // Time of the last mouse input on the canvas
+    private static final double HIT_TOLERANCE = 3; // Pixels around an outline that still select it
+    private static final double PEN_TOLERANCE = 0.5; // Largest deviation allowed when simplifying strokes
+    private int fillTolerance = 32; // Largest channel difference the paint bucket still fills
+    private static final double ZOOM_STEP = 1.25; // Zoom factor of a button press or a wheel notch
+    private static final double DETAIL_PIXELS = 2; // Shapes smaller than this on screen are drawn as a box
+    private static final double HIGHLIGHT_WIDTH = 3; // Screen width of the selection highlight
 
-    public DrawingCanvas(Canvas canvas) {
+    /**
+     * Creates a drawing surface from two stacked canvases of the same size.
+     *
+     * @param canvas  The bottom canvas that holds the committed content.
+     * @param overlay The transparent canvas on top that shows previews and selection.
+     */
+    public DrawingCanvas(Canvas canvas, Canvas overlay) {
         this.canvas = canvas;
         this.gc = canvas.getGraphicsContext2D();
+        this.overlay = overlay;
+        this.overlayGc = overlay.getGraphicsContext2D();
+        this.committedRenderer = new ShapeRenderer(new FxRenderer(gc));
+        this.overlayRenderer = new ShapeRenderer(new FxRenderer(overlayGc));
+        overlay.setMouseTransparent(true); // Let mouse events reach the drawing canvas
         gc.setStroke(lineColor);
         gc.setLineWidth(lineWidth);
-        shapes = new ArrayList<>();
+        canvas.widthProperty().addListener((obs, oldVal, newVal) -> presentCommittedLayer());
+        canvas.heightProperty().addListener((obs, oldVal, newVal) -> presentCommittedLayer());
         initializeMouseHandlers();
+        history.reset(this);
     }
 
         public void setLineWidth(double width) {
@@ -45,14 +117,163 @@ public class DrawingCanvas {
         gc.setStroke(lineColor);
     }
 
+    /**
+     * Sets how far a pixel's color may differ from the clicked one, in any
+     * channel, and still be filled by the paint bucket.
+     *
+     * @param tolerance The tolerance, from 0 to 255.
+     */
+    public void setFillTolerance(int tolerance) {
+        this.fillTolerance = tolerance;
+    }
+
+    /**
+     * Sets the compression settings used by later saves.
+     *
+     * @param encoder The PNG and JPG settings.
+     */
+    public void setEncoder(ImageEncoder encoder) {
+        this.encoder = encoder;
+    }
+
        public void saveImage(File file) {
-        try {
-            WritableImage snapshot = canvas.snapshot(null, null);
-            BufferedImage bufferedImage = SwingFXUtils.fromFXImage(snapshot, null);
-            ImageIO.write(bufferedImage, "png", file); // Save as PNG
-        } catch (IOException e) {
-            e.printStackTrace(); // Handle exceptions appropriately
+        saveImage(file, null);
+    }
+
+    /**
+     * Writes the committed shapes to a shape file that BatchRender can stamp
+     * onto other images.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void saveShapes(File file) throws IOException {
+        shapes.save(file);
+    }
+
+    /**
+     * Saves the document as a project that keeps every shape editable. A tiled
+     * background is stored as a reference to its file; any other background is
+     * embedded, since the file it came from may be overwritten by saves.
+     *
+     * @param file The project file to write.
+     * @throws IOException If the file cannot be written, or if the tiled
+     *                     background's file was saved over, so that a reference
+     *                     would load the shapes baked into it twice.
+     */
+    public void saveProject(File file) throws IOException {
+        if (currentTiles != null && currentTiles.isFileReplaced()) {
+            throw new IOException("The background file " + currentTiles.getFile()
+                    + " was overwritten since it was opened; reopen it before saving a project");
+        }
+        if (currentTiles != null) {
+            ProjectFile.write(file, shapes, currentTiles.getFile().toURI().toString(), null,
+                    currentTiles.getWidth(), currentTiles.getHeight());
+        } else if (currentImage != null) {
+            int width = (int) currentImage.getWidth();
+            int height = (int) currentImage.getHeight();
+            int[] pixels = new int[width * height];
+            currentImage.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+            ProjectFile.write(file, shapes, null, pixels, width, height);
+        } else {
+            ProjectFile.write(file, shapes, null, null, 0, 0);
+        }
+    }
+
+    /**
+     * Replaces the document with a project. Shapes are bulk-copied from the
+     * mapped file and the undo history starts over from the loaded state.
+     *
+     * @param project The open project.
+     * @throws IOException If the project or its background cannot be read.
+     */
+    public void loadProject(ProjectFile project) throws IOException {
+        ShapeStore loaded = new ShapeStore(); // The document is left as it was if the background fails
+        project.loadShapes(loaded);
+        Image image = null;
+        TiledImage tiles = null;
+        if (project.getBackgroundKind() == ProjectFile.BACKGROUND_REFERENCE) {
+            tiles = TiledImage.open(project.getBackgroundFile()); // Only tiled backgrounds are saved as references
+        } else {
+            image = project.readBackgroundPixels();
+        }
+        shapes = loaded;
+        selectedShape = -1;
+        placeholderImage = null;
+        currentImage = image;
+        currentTiles = tiles;
+        reindexShapes();
+        isLayerValid = false;
+        hasPreview = false;
+        clearOverlay();
+        rebuildCommittedLayer();
+        history.reset(this);
+        savedEditCount = editCount; // Nothing to autosave until the user edits
+    }
+
+    /**
+     * Saves the committed content to a file in the background, at the full
+     * resolution of the background image, or the canvas size when there is
+     * none. Only copying the shapes happens on the JavaFX thread; the image
+     * is rendered band by band as it is encoded, whatever the window shows.
+     * SVG and PDF files get the shapes as vectors (see VectorExporter); they
+     * are exports, so they do not mark the document as saved.
+     *
+     * @param file   The file to write.
+     * @param onDone Called on the JavaFX thread with null on success or the failure, may be null.
+     */
+    public void saveImage(File file, Consumer<Exception> onDone) {
+        if (placeholderImage != null) {
+            // Saving now would write the low resolution preview over the file
+            if (onDone != null) {
+                onDone.accept(new IOException("The image is still loading"));
+            }
+            return;
+        }
+        DocumentRaster raster = DocumentRaster.capture(shapes, currentImage, currentTiles,
+                (int) Math.ceil(canvas.getWidth()), (int) Math.ceil(canvas.getHeight()));
+        if (raster.getWidth() <= 0 || raster.getHeight() <= 0) {
+            if (onDone != null) {
+                onDone.accept(new IOException("There is nothing to save"));
+            }
+            return;
+        }
+        int countAtGrab = editCount;
+        boolean isExport = VectorExporter.supports(ImageEncoder.formatOf(file)); // Cannot be opened again, so unsaved edits stay unsaved
+        OperationJournal savingJournal = journal;
+        long mark = 0;
+        if (savingJournal != null) {
+            try {
+                mark = savingJournal.mark();
+                if (!isExport && savingJournal.getFile().equals(OperationJournal.journalFileFor(file))) {
+                    // Once the save trims the journal, a replay starts from the document as it is now
+                    journalFloor = history.getPosition();
+                    journalCeiling = journalFloor;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                savingJournal = null;
+            }
         }
+        OperationJournal journalToTrim = savingJournal;
+        long trimMark = mark;
+        imageSaver.save(raster, file, encoder, error -> {
+            if (error == null && !isExport) {
+                savedEditCount = countAtGrab;
+                // Edits up to the grab are now in the saved file, so only later ones need journaling
+                if (journalToTrim != null && journalToTrim == journal
+                        && journalToTrim.getFile().equals(OperationJournal.journalFileFor(file))) {
+                    try {
+                        journalToTrim.discardBefore(trimMark);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            if (onDone != null) {
+                onDone.accept(error);
+            }
+        });
     }
 
     /**
@@ -61,56 +282,144 @@ public class DrawingCanvas {
      * @param shape The name of the shape to set (e.g., "circle", "rectangle").
      */
     public void setShape(String shape) {
-        this.currentShape = shape;
+        this.currentShape = ShapeStore.kindOf(shape);
         isPenActive = false;
         initializeMouseHandlers();
     }
 
     public void setSelectActive(boolean isActive) {
+        boolean wasSelecting = isSelecting;
         isSelecting = isActive; // Set the selection state
-        if (isActive) {
-            selectedShape = null; // Clear previous selection
+        if (isActive && !wasSelecting && selectedShape >= 0) {
+            applySelection(-1); // Clear previous selection
         }
     }
 
     public void setPenActive(boolean isActive) {
         this.isPenActive = isActive;
         if (isActive) {
-            currentShape = null; // Clear current shape
+            currentShape = ShapeStore.NONE; // Clear current shape
         }
         initializeMouseHandlers();
     }
 
     private void initializeMouseHandlers() {
+        // Tools work in document coordinates, so every position is mapped through the viewport
         canvas.setOnMousePressed(e -> {
-            if (isSelecting) {
-                updateSelection(e.getX(), e.getY());
+            lastInputNanos = System.nanoTime();
+            hasPendingDrag = false;
+            dragPulse.start();
+            double x = viewport.toDocumentX(e.getX());
+            double y = viewport.toDocumentY(e.getY());
+            if (e.getButton() != MouseButton.PRIMARY) {
+                isPanning = true; // The other buttons drag the view around
+                panX = e.getX();
+                panY = e.getY();
+            } else if (isSelecting) {
+                updateSelection(x, y);
+            } else if (currentShape == ShapeStore.FILL && !isPenActive) {
+                fillAt(x, y); // The paint bucket acts on the press; drags and the release are ignored
             } else {
-                startDrawing(e.getX(), e.getY());
+                startDrawing(x, y);
             }
         });
 
+        // Drag events can arrive several times per frame, so they are only
+        // buffered here and rendered once per pulse by dragPulse
         canvas.setOnMouseDragged(e -> {
-            if (isPenActive) {
-                drawWithPen(e.getX(), e.getY());
-            } else if (isSelecting) {
-                updateSelection(e.getX(), e.getY());
-            } else {
-                drawCurrentShape(e.getX(), e.getY());
+            lastInputNanos = System.nanoTime();
+            if (isPanning) {
+                pendingDragX = e.getX(); // Pans are measured on screen
+                pendingDragY = e.getY();
+                hasPendingDrag = true;
+                return;
+            }
+            double x = viewport.toDocumentX(e.getX());
+            double y = viewport.toDocumentY(e.getY());
+            if (isPenActive && activeStroke != null) {
+                activeStroke.add(x, y); // The pen keeps every point, only its drawing waits
             }
+            pendingDragX = x;
+            pendingDragY = y;
+            hasPendingDrag = true;
         });
 
         canvas.setOnMouseReleased(e -> {
-            if (isPenActive) {
+            lastInputNanos = System.nanoTime();
+            flushDrag(); // Show the final position before the gesture is committed
+            dragPulse.stop();
+            if (isPanning) {
+                isPanning = false;
+            } else if (isPenActive) {
                 finalizeLine();
             } else if (isSelecting) {
                 finalizeSelection();
             } else {
-                finalizeShape(e.getX(), e.getY());
+                finalizeShape(viewport.toDocumentX(e.getX()), viewport.toDocumentY(e.getY()));
+            }
+        });
+
+        canvas.setOnScroll(e -> {
+            lastInputNanos = System.nanoTime();
+            if (e.getDeltaY() != 0 && viewport.zoomAt(Math.pow(ZOOM_STEP, e.getDeltaY() / 40), e.getX(), e.getY())) {
+                scheduleViewRefresh(); // Wheels and touchpads send many scroll events per frame
             }
         });
     }
 
+    /**
+     * Zooms in one step around the center of the canvas.
+     */
+    public void zoomIn() {
+        zoomBy(ZOOM_STEP);
+    }
+
+    /**
+     * Zooms out one step around the center of the canvas.
+     */
+    public void zoomOut() {
+        zoomBy(1 / ZOOM_STEP);
+    }
+
+    /**
+     * Shows the document at 1:1 from its top-left corner.
+     */
+    public void resetView() {
+        if (!viewport.isIdentity()) {
+            viewport.reset();
+            refreshView();
+        }
+    }
+
+    private void zoomBy(double factor) {
+        if (viewport.zoomAt(factor, canvas.getWidth() / 2, canvas.getHeight() / 2)) {
+            refreshView();
+        }
+    }
+
+    private void scheduleViewRefresh() {
+        isViewChanged = true;
+        viewPulse.start();
+    }
+
+    /**
+     * Repaints both canvases after the view moved. The document did not
+     * change, so only what is on screen is drawn again.
+     */
+    private void refreshView() {
+        isViewChanged = false;
+        rebuildCommittedLayer();
+        hasPreview = false; // The next drag redraws the preview where the view put it
+        clearOverlay();
+        if (selectedShape >= 0) {
+            repaintOverlay(selectedShape);
+        }
+        if (activeStroke != null) {
+            penPointsShown = 1; // Redraw the whole stroke in progress
+            drawWithPen();
+        }
+    }
+
     /**
      * Initiates the drawing process at the specified coordinates.
      *
@@ -120,170 +429,805 @@ public class DrawingCanvas {
     private void startDrawing(double x, double y) {
         startX = x;
         startY = y;
+        hasPreview = false; // A new drag starts without a previous preview to erase
 
 
         if (isPenActive) {
-            gc.beginPath();
-            gc.moveTo(startX, startY);
-            gc.setStroke(lineColor);
-            gc.setLineWidth(lineWidth);
-            gc.stroke();
+            activeStroke = new PenStroke();
+            activeStroke.add(startX, startY);
+            penPointsShown = 1;
         }
     }
 
-    private void drawWithPen(double x, double y) {
-        gc.lineTo(x, y);
-        gc.stroke();
+    /**
+     * Renders the newest buffered drag position, if any. Called once per pulse
+     * while a button is held, and when it is released.
+     */
+    private void flushDrag() {
+        if (!hasPendingDrag) {
+            return;
+        }
+        hasPendingDrag = false;
+        if (isPanning) {
+            viewport.panBy(pendingDragX - panX, pendingDragY - panY);
+            panX = pendingDragX;
+            panY = pendingDragY;
+            refreshView();
+        } else if (isPenActive) {
+            drawWithPen();
+        } else if (isSelecting) {
+            updateSelection(pendingDragX, pendingDragY);
+        } else {
+            drawCurrentShape(pendingDragX, pendingDragY);
+        }
+    }
+
+    /**
+     * Strokes the pen segments added since the last pulse on the overlay, so
+     * each frame costs the same no matter how long the stroke is.
+     */
+    private void drawWithPen() {
+        if (activeStroke == null) {
+            return;
+        }
+        overlayGc.setStroke(lineColor);
+        overlayGc.setLineWidth(lineWidth);
+        overlayGc.setLineCap(StrokeLineCap.ROUND); // Round caps hide the joins between segments
+        for (int i = penPointsShown; i < activeStroke.size(); i++) {
+            overlayGc.strokeLine(activeStroke.getX(i - 1), activeStroke.getY(i - 1), activeStroke.getX(i), activeStroke.getY(i));
+        }
+        penPointsShown = activeStroke.size();
     }
 
+    /**
+     * Selects the topmost shape under the given point, using the grid index so
+     * only shapes near the point are tested.
+     *
+     * @param x The x-coordinate of the mouse.
+     * @param y The y-coordinate of the mouse.
+     */
     private void updateSelection(double x, double y) {
-        selectedShape = null; // Reset the selected shape
-        for (ShapeData shape : shapes) {
-            if (shape.startX <= x && x <= shape.endX && shape.startY <= y && y <= shape.endY) {
-                selectedShape = shape; // Set the clicked shape as selected
-                shape.highlighted = true; // Highlight the shape
-                shape.color = Color.RED; // Change the color when highlighted
-                break;
-            } else {
-                shape.highlighted = false; // Reset highlight if not selected
-                shape.color = shape.originalColor; // Restore original color
-            }
+        EditorEvents.Selection event = new EditorEvents.Selection();
+        event.begin();
+        long start = System.nanoTime();
+        int hit = shapeIndex.queryPoint(x, y, id -> shapes.contains(id, HIT_TOLERANCE, x, y));
+        PerfStats.global().recordSelection(System.nanoTime() - start);
+        event.shapeCount = shapes.size();
+        event.hit = hit;
+        event.commit();
+        if (hit == selectedShape) {
+            return; // Nothing changed, so skip the redraw
+        }
+
+        // The highlight lives on the overlay, so the committed layer stays valid
+        int previous = selectedShape;
+        selectedShape = hit;
+        if (previous >= 0) {
+            repaintOverlay(previous);
+        }
+        if (selectedShape >= 0) {
+            repaintOverlay(selectedShape);
         }
-        redrawCanvas();
     }
 
     private void finalizeSelection() {
-        isSelecting = false; // End the selection
-        redrawCanvas(); // Redraw to show selected shapes
+        isSelecting = false; // End the selection; it is view state, so it is neither undone nor journaled
     }
 
-    private void drawOctagon(double startX, double startY, double endX, double endY) {
-        double centerX = (startX + endX) / 2;
-        double centerY = (startY + endY) / 2;
-        double radius = Math.hypot(endX - startX, endY - startY) / 2; // Calculate radius
-        double[] xPoints = new double[8];
-        double[] yPoints = new double[8];
+    /**
+     * Draws the rubber-band preview for the current shape on the overlay. Only
+     * the area covered by the previous and the new preview is cleared, and the
+     * committed content underneath is never touched.
+     *
+     * @param x The current x-coordinate of the mouse.
+     * @param y The current y-coordinate of the mouse.
+     */
+    private void drawCurrentShape(double x, double y) {
+        if (currentShape == ShapeStore.NONE || currentShape == ShapeStore.FILL) {
+            return;
+        }
 
-        for (int i = 0; i < 8; i++) {
-            double angle = Math.toRadians(45 * i); // 45 degrees apart
-            xPoints[i] = centerX + radius * Math.cos(angle);
-            yPoints[i] = centerY + radius * Math.sin(angle);
+        ShapeGeometry.bounds(currentShape, startX, startY, x, y, boundsScratch);
+        double pad = lineWidth * 5 + 1; // Miter joins reach up to ten half widths out, see ShapeStore.strokeReach
+        double minX = boundsScratch[0] - pad, minY = boundsScratch[1] - pad;
+        double maxX = boundsScratch[2] + pad, maxY = boundsScratch[3] + pad;
+        if (hasPreview) {
+            repaintOverlay(Math.min(minX, previewBounds[0]), Math.min(minY, previewBounds[1]),
+                    Math.max(maxX, previewBounds[2]), Math.max(maxY, previewBounds[3]));
         }
+        previewBounds[0] = minX;
+        previewBounds[1] = minY;
+        previewBounds[2] = maxX;
+        previewBounds[3] = maxY;
+        hasPreview = true;
 
-        gc.strokePolygon(xPoints, yPoints, 8); // Draw octagon
+        overlayGc.setStroke(lineColor);
+        overlayGc.setLineWidth(lineWidth);
+        overlayRenderer.strokeShape(currentShape, startX, startY, x, y);
     }
 
-    private void drawCurrentShape(double x, double y) {
-        redrawCanvas();
-
-        if (currentShape != null) {
-            switch (currentShape) {
-                case "square":
-                    gc.strokeRect(startX, startY, x - startX, x - startX);
-                    break;
-                case "circle":
-                    double radius = Math.hypot(x - startX, y - startY);
-                    gc.strokeOval(startX - radius, startY - radius, radius * 2, radius * 2);
-                    break;
-                case "rectangle":
-                    gc.strokeRect(startX, startY, x - startX, y - startY);
-                    break;
-                case "ellipse":
-                    gc.strokeOval(startX, startY, x - startX, y - startY);
-                    break;
-                case "triangle":
-                    gc.strokePolygon(new double[]{startX, x, (startX + x) / 2},
-                            new double[]{startY, y, startY - (y - startY)}, 3);
-                    break;
-                case "octagon":
-                    drawOctagon(startX, startY, x, y);
-                    break;
-                // Add more shapes as needed
-            }
+    private void finalizeShape(double x, double y) {
+        if (currentShape == ShapeStore.NONE || currentShape == ShapeStore.FILL) {
+            return; // No shape tool is active, or the paint bucket already filled on the press
         }
+        clearPreview();
+        perform(new Edit.AddShape(currentShape, startX, startY, x, y, lineColor, lineWidth));
     }
 
-    private void finalizeShape(double x, double y) {
-        ShapeData shapeData = new ShapeData(currentShape, startX, startY, x, y);
-        shapes.add(shapeData);
-        redrawCanvas();
+    /**
+     * Flood fills the region of the document around a point with the line
+     * color, background and shapes together. The document is rendered at its
+     * own resolution, so the fill does not depend on the zoom or the window
+     * size. Only the part on screen is rendered, and at most
+     * TILING_THRESHOLD_PIXELS of it around the point, so a click never renders
+     * or decodes the whole document and the fill stops at the edge of that area.
+     * The pixels are dropped once the fill is found.
+     *
+     * @param x The x-coordinate of the click, in document coordinates.
+     * @param y The y-coordinate of the click, in document coordinates.
+     */
+    private void fillAt(double x, double y) {
+        DocumentRaster document = DocumentRaster.capture(shapes, currentImage, currentTiles,
+                (int) Math.ceil(canvas.getWidth()), (int) Math.ceil(canvas.getHeight()));
+        int seedX = (int) Math.floor(x);
+        int seedY = (int) Math.floor(y);
+        if (seedX < 0 || seedY < 0 || seedX >= document.getWidth() || seedY >= document.getHeight()) {
+            return;
+        }
+        double[] visible = new double[4];
+        viewport.visibleBounds(canvas.getWidth(), canvas.getHeight(), visible);
+        int left = Math.max(0, (int) Math.floor(visible[0]));
+        int top = Math.max(0, (int) Math.floor(visible[1]));
+        int right = Math.min(document.getWidth(), (int) Math.ceil(visible[2]));
+        int bottom = Math.min(document.getHeight(), (int) Math.ceil(visible[3]));
+        if (seedX < left || seedY < top || seedX >= right || seedY >= bottom) {
+            return; // Clicks land on screen, so this only happens mid-resize
+        }
+        int side = (int) Math.sqrt(TiledImage.TILING_THRESHOLD_PIXELS);
+        if ((long) (right - left) * (bottom - top) > TiledImage.TILING_THRESHOLD_PIXELS) {
+            left = Math.max(left, seedX - side / 2);
+            top = Math.max(top, seedY - side / 2);
+            right = Math.min(right, left + side);
+            bottom = Math.min(bottom, top + side);
+        }
+        int columns = right - left;
+        int rows = bottom - top;
+        int[] pixels = new int[columns * rows]; // Not kept, so a click does not pin it until the next one
+        int originX = left, originY = top;
+        PixelFilter.inBands(rows, (from, to) ->
+                document.readRegion(originX, originY + from, columns, to - from, pixels, from * columns));
+        int[] rects = FloodFill.fill(pixels, columns, rows, seedX - left, seedY - top, fillTolerance);
+        for (int i = 0; i < rects.length; i += 2) {
+            rects[i] += left; // Back to document coordinates
+            rects[i + 1] += top;
+        }
+        if (rects.length > 0) {
+            perform(new Edit.AddFill(rects, lineColor));
+        }
     }
 
+    private void clearPreview() {
+        if (hasPreview) {
+            repaintOverlay(previewBounds[0], previewBounds[1], previewBounds[2], previewBounds[3]);
+            hasPreview = false;
+        }
+    }
+
+    /**
+     * Simplifies the finished pen stroke and commits it to the document so it
+     * is replayed by redrawShapes like any other shape.
+     */
     private void finalizeLine() {
-        // Placeholder for finalizing the line; customize as needed
+        if (activeStroke == null) {
+            return;
+        }
+        PenStroke rawStroke = activeStroke;
+        activeStroke = null;
+        overlayGc.setLineCap(StrokeLineCap.SQUARE);
+
+        rawStroke.bounds(boundsScratch);
+        double pad = lineWidth / 2 + 1;
+        repaintOverlay(boundsScratch[0] - pad, boundsScratch[1] - pad, boundsScratch[2] + pad, boundsScratch[3] + pad);
+        perform(new Edit.AddStroke(rawStroke.simplify(PEN_TOLERANCE), lineColor, lineWidth));
     }
 
-    private void redrawCanvas() {
-        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    /**
+     * Applies an edit and records it so it can be undone.
+     *
+     * @param edit The edit to apply.
+     */
+    private void perform(Edit edit) {
+        edit.apply(this);
+        history.record(edit, this);
+        journalCeiling = history.getPosition(); // The redo tail is gone, in a replay too
+        journalEdit(edit);
+    }
 
-        if (currentImage != null) {
-            gc.drawImage(currentImage, 0, 0);
+    private void journalEdit(Edit edit) {
+        editCount++;
+        if (journal != null) {
+            try {
+                journal.appendEdit(edit);
+            } catch (IOException e) {
+                e.printStackTrace(); // Keep editing even if the journal cannot be written
+            }
+        }
+    }
+
+    /**
+     * Reverts the most recent edit.
+     */
+    public void undo() {
+        if (history.canUndo()) {
+            // A replay starts from the state the journal began at, so it cannot undo the edits before it
+            boolean isReplayable = history.getPosition() > journalFloor;
+            isReplaying = true;
+            history.undo(this);
+            isReplaying = false;
+            refreshAfterReplay();
+            editCount++;
+            if (journal != null) {
+                try {
+                    if (isReplayable) {
+                        journal.appendUndo();
+                    } else {
+                        journal.appendState(shapes, currentImage, currentTiles);
+                        journalFloor = history.getPosition(); // The replay starts over from this state
+                        journalCeiling = journalFloor;
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-applies the most recently undone edit.
+     */
+    public void redo() {
+        if (history.canRedo()) {
+            Edit edit = history.peekRedo();
+            boolean isReplayable = history.getPosition() < journalCeiling;
+            isReplaying = true;
+            history.redo(this);
+            isReplaying = false;
+            refreshAfterReplay();
+            editCount++;
+            if (journal != null) {
+                try {
+                    if (isReplayable) {
+                        journal.appendRedo();
+                    } else {
+                        journal.appendEdit(edit); // The replay has nothing to redo, so it makes the edit anew
+                        journalCeiling = history.getPosition();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the journal that edits are appended to, or null to stop journaling.
+     *
+     * @param journal The journal for the file being edited.
+     */
+    public void setJournal(OperationJournal journal) {
+        this.journal = journal;
+        journalFloor = history.getPosition(); // A replay starts from the document as it is now
+        journalCeiling = journalFloor;
+    }
+
+    /**
+     * Rebuilds edits left in a journal by a session that did not save, then
+     * keeps journaling to it.
+     *
+     * @param journal The journal to recover from.
+     * @throws IOException If the journal cannot be read.
+     */
+    public void recoverFrom(OperationJournal journal) throws IOException {
+        this.journal = null; // Replayed edits are already in the journal
+        try {
+            journal.replay(this);
+        } finally {
+            this.journal = journal;
+            // A later replay rebuilds this same history, from its start
+            journalFloor = 0;
+            journalCeiling = history.getRedoLimit();
+        }
+    }
+
+    /**
+     * Puts in place a whole document logged by OperationJournal.appendState,
+     * after the journal has read its shapes into the shape store. The undo
+     * history starts over from it, as it does for the replay that logged it.
+     */
+    void restoreJournaledState(Image image, TiledImage tiles) {
+        selectedShape = -1;
+        placeholderImage = null;
+        currentImage = image;
+        currentTiles = tiles;
+        reindexShapes();
+        isLayerValid = false;
+        hasPreview = false;
+        clearOverlay();
+        rebuildCommittedLayer();
+        history.reset(this);
+        editCount++;
+    }
+
+    void replayEdit(Edit edit) {
+        perform(edit);
+    }
+
+    /**
+     * Forces journaled edits to disk. Safe to call from any thread.
+     */
+    public void syncJournal() {
+        OperationJournal current = journal;
+        if (current != null) {
+            try {
+                current.sync();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Tells whether there are changes that have not been saved.
+     *
+     * @return true if the drawing changed since the last save.
+     */
+    public boolean isDirty() {
+        return editCount != savedEditCount;
+    }
+
+    /**
+     * Returns how long it has been since the user last used the mouse on the canvas.
+     *
+     * @return The idle time in milliseconds.
+     */
+    public long getIdleMillis() {
+        return (System.nanoTime() - lastInputNanos) / 1_000_000;
+    }
+
+    /**
+     * Sets how much memory undo checkpoints may use.
+     *
+     * @param bytes The budget in bytes.
+     */
+    public void setUndoMemoryBudget(long bytes) {
+        history.setMemoryBudget(bytes);
+    }
+
+    private void refreshAfterReplay() {
+        hasPreview = false;
+        clearOverlay();
+        rebuildCommittedLayer();
+        if (selectedShape >= 0) {
+            repaintOverlay(selectedShape);
+        }
+    }
+
+    void commitShape(byte kind, double startX, double startY, double endX, double endY, Color color, double width) {
+        int id = shapes.add(kind, startX, startY, endX, endY, color, width);
+        indexShape(id);
+        if (!isReplaying) {
+            drawShape(id); // New shapes go on top, so the committed canvas only needs one more stroke
+        }
+        isLayerValid = false;
+    }
+
+    void commitFill(int[] rects, Color color) {
+        int id = shapes.addFill(rects, color);
+        indexShape(id);
+        if (!isReplaying) {
+            drawShape(id);
+        }
+        isLayerValid = false;
+    }
+
+    void commitStroke(PenStroke stroke, Color color, double width) {
+        int id = shapes.addStroke(stroke, color, width);
+        indexShape(id);
+        if (!isReplaying) {
+            drawShape(id);
+        }
+        isLayerValid = false;
+    }
+
+    void applySelection(int id) {
+        if (id >= shapes.size()) {
+            id = -1; // E.g. a selection replayed from an old journal whose shapes were since saved into the image
+        }
+        int previous = selectedShape;
+        selectedShape = id;
+        if (!isReplaying) {
+            if (previous >= 0) {
+                repaintOverlay(previous);
+            }
+            if (id >= 0) {
+                repaintOverlay(id);
+            }
+        }
+    }
+
+    void applyClear() {
+        shapes.clear();
+        shapeIndex.clear();
+        selectedShape = -1;
+        currentImage = null; // Clear the current image
+        currentTiles = null;
+        placeholderImage = null;
+        isLayerValid = false;
+        if (!isReplaying) {
+            hasPreview = false;
+            clearOverlay();
+            rebuildCommittedLayer();
+        }
+    }
+
+    void applyFilter(PixelFilter filter) {
+        if (currentImage == null) {
+            return; // Nothing to filter, e.g. the image the edit was made on could not be recovered
+        }
+        currentImage = filter.apply(currentImage);
+        isLayerValid = false;
+        if (!isReplaying) {
+            rebuildCommittedLayer();
         }
+    }
 
-        redrawShapes();
-    }
-
-    private void redrawShapes() {
-        for (ShapeData shape : shapes) {
-            gc.setStroke(shape.highlighted ? Color.RED : shape.originalColor); // Highlight color
-            gc.setLineWidth(shape.highlighted ? 3 : lineWidth); // Thicker line for highlighted shapes
-
-
-            switch (shape.type) {
-                case "square":
-                    gc.strokeRect(shape.startX, shape.startY, shape.endX - shape.startX, shape.endX - shape.startX);
-                    break;
-                case "circle":
-                    double radius = Math.hypot(shape.endX - shape.startX, shape.endY - shape.startY);
-                    gc.strokeOval(shape.startX - radius, shape.startY - radius, radius * 2, radius * 2);
-                    break;
-                case "rectangle":
-                    gc.strokeRect(shape.startX, shape.startY, shape.endX - shape.startX, shape.endY - shape.startY);
-                    break;
-                case "ellipse":
-                    gc.strokeOval(shape.startX, shape.startY, shape.endX - shape.startX, shape.endY - shape.startY);
-                    break;
-                case "triangle":
-                    gc.strokePolygon(new double[]{shape.startX, shape.endX, (shape.startX + shape.endX) / 2},
-                            new double[]{shape.startY, shape.endY, shape.startY - (shape.endY - shape.startY)}, 3);
-                    break;
-                case "octagon":
-                    drawOctagon(shape.startX, shape.startY, shape.endX, shape.endY);
-                    break;
-                // Add more shapes as needed
+    void applyTransform(ImageTransform transform) {
+        if (currentImage == null) {
+            return; // Nothing to transform, e.g. the image the edit was made on could not be recovered
+        }
+        shapes = transform.apply(shapes, (int) currentImage.getWidth(), (int) currentImage.getHeight());
+        currentImage = transform.apply(currentImage);
+        reindexShapes();
+        isLayerValid = false;
+        if (!isReplaying) {
+            hasPreview = false;
+            clearOverlay(); // The highlight moved with its shape
+            if (selectedShape >= 0) {
+                repaintOverlay(selectedShape);
             }
+            rebuildCommittedLayer();
         }
     }
 
-    public void setImage(Image image) {
+    /**
+     * Called by UndoManager after it has reloaded the shape store from a checkpoint.
+     *
+     * @param image The background image at the checkpoint.
+     * @param tiles The tiled background at the checkpoint.
+     */
+    void restoreState(Image image, TiledImage tiles) {
         this.currentImage = image;
-        if (currentImage != null) {
+        this.currentTiles = tiles;
+        if (selectedShape >= shapes.size()) {
+            selectedShape = -1; // The selected shape was undone
+        }
+        reindexShapes();
+        isLayerValid = false;
+    }
+
+    ShapeStore getShapeStore() {
+        return shapes;
+    }
+
+    Image getImage() {
+        return currentImage;
+    }
+
+    TiledImage getTiledImage() {
+        return currentTiles;
+    }
+
+    private void reindexShapes() {
+        shapeIndex.clear();
+        for (int id = 0, n = shapes.size(); id < n; id++) {
+            indexShape(id);
+        }
+    }
+
+    private void indexShape(int id) {
+        shapes.bounds(id, boundsScratch);
+        // Covers hits near the stroke and everything the stroke draws, so the index also culls redraws
+        double pad = HIT_TOLERANCE + shapes.strokeReach(id);
+        shapeIndex.insert(id, boundsScratch[0] - pad, boundsScratch[1] - pad, boundsScratch[2] + pad, boundsScratch[3] + pad);
+    }
+
+    /**
+     * Repaints the committed canvas. When the view is at 1:1 the canvas holds
+     * the document as it is, so the layer is taken from it right away;
+     * otherwise there is no layer, and the canvas is redrawn when needed.
+     */
+    private void rebuildCommittedLayer() {
+        redrawCanvas(viewport);
+        if (viewport.isIdentity()) {
+            snapshotCommittedLayer();
+        } else {
+            isLayerValid = false;
+        }
+    }
+
+    private void snapshotCommittedLayer() {
+        int width = (int) Math.ceil(canvas.getWidth());
+        int height = (int) Math.ceil(canvas.getHeight());
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (committedLayer == null || committedLayer.getWidth() != width || committedLayer.getHeight() != height) {
+            committedLayer = new WritableImage(width, height);
+        }
+        canvas.snapshot(new SnapshotParameters(), committedLayer); // Reuses the layer's pixels
+        isLayerValid = true;
+    }
+
+    /**
+     * Paints the committed canvas from the cached layer, e.g. after a resize.
+     */
+    private void presentCommittedLayer() {
+        if (isLayerValid && viewport.isIdentity() && committedLayer.getWidth() >= canvas.getWidth() && committedLayer.getHeight() >= canvas.getHeight()) {
             gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            gc.drawImage(committedLayer, 0, 0);
+        } else {
+            rebuildCommittedLayer();
+        }
+    }
+
+    /**
+     * Draws the document on the committed canvas as a view shows it. Only the
+     * tiles and shapes inside the view are drawn, and when zoomed out, tiles
+     * come from a coarser level and tiny shapes are drawn as boxes, so the
+     * cost follows what is on screen rather than the size of the document.
+     * The canvas keeps the view's transform, so later strokes land in place.
+     *
+     * @param view The view to draw.
+     */
+    private void redrawCanvas(Viewport view) {
+        EditorEvents.Redraw event = new EditorEvents.Redraw();
+        event.begin();
+        long start = System.nanoTime();
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        view.apply(gc);
+        view.visibleBounds(canvas.getWidth(), canvas.getHeight(), viewBounds);
+
+        if (currentImage != null) {
             gc.drawImage(currentImage, 0, 0);
+        } else if (currentTiles != null) {
+            // Only tiles on screen are decoded
+            currentTiles.draw(gc, viewBounds[0], viewBounds[1], viewBounds[2], viewBounds[3], view.getScale());
+        } else if (placeholderImage != null) {
+            gc.drawImage(placeholderImage, 0, 0, placeholderWidth, placeholderHeight);
         }
+
+        long shapesStart = System.nanoTime();
+        int drawn = redrawShapes(view);
+        long end = System.nanoTime();
+        PerfStats.global().recordRedraw(end - start, end - shapesStart, drawn);
+        event.shapesDrawn = drawn;
+        event.shapeNanos = end - shapesStart;
+        event.commit();
     }
 
-    public void clear() {
+    /**
+     * Draws the committed shapes inside the view in stacking order.
+     *
+     * @param view The view being drawn; viewBounds must hold its visible area.
+     * @return The number of shapes drawn.
+     */
+    private int redrawShapes(Viewport view) {
+        // Index bounds already cover each shape's stroke, whatever its width
+        int count = collectVisibleShapes(viewBounds[0], viewBounds[1], viewBounds[2], viewBounds[3]);
+        double detailSize = view.getScale() < 1 ? DETAIL_PIXELS / view.getScale() : 0; // Full detail at 1:1 and above
+        committedRenderer.drawShapes(shapes, visibleIds, count, detailSize);
+        return count;
+    }
+
+    /**
+     * Fills visibleIds with the ids of shapes whose bounds touch an area, in
+     * increasing order. The grid index finds them, and a bitset puts them
+     * back in stacking order without sorting.
+     *
+     * @return The number of ids found.
+     */
+    private int collectVisibleShapes(double minX, double minY, double maxX, double maxY) {
+        int words = (shapes.size() + 63) >>> 6;
+        if (visibleMask.length < words) {
+            visibleMask = new long[Math.max(words, visibleMask.length * 2)];
+        }
+        Arrays.fill(visibleMask, 0, words, 0);
+        shapeIndex.queryRect(minX, minY, maxX, maxY, markVisible);
+
+        int count = 0;
+        for (int word = 0; word < words; word++) {
+            long bits = visibleMask[word];
+            while (bits != 0) {
+                if (count == visibleIds.length) {
+                    visibleIds = Arrays.copyOf(visibleIds, count * 2);
+                }
+                visibleIds[count++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1; // Clear the lowest set bit
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Clears a region of the overlay and redraws the selection highlight if it
+     * falls inside it.
+     *
+     * @param minX The left edge of the damaged region.
+     * @param minY The top edge of the damaged region.
+     * @param maxX The right edge of the damaged region.
+     * @param maxY The bottom edge of the damaged region.
+     */
+    private void repaintOverlay(double minX, double minY, double maxX, double maxY) {
+        // Snap outwards to whole screen pixels so anti-aliased edges are fully cleared
+        double x = Math.max(0, Math.floor(viewport.toScreenX(minX)));
+        double y = Math.max(0, Math.floor(viewport.toScreenY(minY)));
+        double w = Math.min(overlay.getWidth(), Math.ceil(viewport.toScreenX(maxX))) - x;
+        double h = Math.min(overlay.getHeight(), Math.ceil(viewport.toScreenY(maxY))) - y;
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+
+        overlayGc.save();
+        overlayGc.setTransform(1, 0, 0, 1, 0, 0); // Clip and clear in screen pixels
+        overlayGc.beginPath();
+        overlayGc.rect(x, y, w, h);
+        overlayGc.clip();
+        overlayGc.clearRect(x, y, w, h);
+        viewport.apply(overlayGc);
+        if (selectedShape >= 0) {
+            overlayGc.setStroke(Color.RED); // Highlight color
+            overlayGc.setLineWidth(HIGHLIGHT_WIDTH / viewport.getScale()); // Same thickness at any zoom
+            overlayRenderer.strokeShape(shapes, selectedShape);
+        }
+        overlayGc.restore();
+    }
+
+    /**
+     * Clears the whole overlay and leaves it drawing in document coordinates.
+     */
+    private void clearOverlay() {
+        overlayGc.setTransform(1, 0, 0, 1, 0, 0);
+        overlayGc.clearRect(0, 0, overlay.getWidth(), overlay.getHeight());
+        viewport.apply(overlayGc);
+    }
+
+    private void drawShape(int id) {
+        committedRenderer.drawShape(shapes, id);
+    }
+
+    /**
+     * Repaints the overlay area covered by a shape, e.g. after its highlight changes.
+     *
+     * @param id The id of the shape whose area needs repainting.
+     */
+    private void repaintOverlay(int id) {
+        shapes.bounds(id, boundsScratch);
+        double pad = (HIGHLIGHT_WIDTH / 2 + 1) / viewport.getScale(); // Highlights keep their screen width
+        repaintOverlay(boundsScratch[0] - pad, boundsScratch[1] - pad, boundsScratch[2] + pad, boundsScratch[3] + pad);
+    }
+
+    /**
+     * Replaces the document with a freshly opened image: no shapes, and the
+     * undo history starts from the image, as with loadProject.
+     *
+     * @param image The decoded image, or null.
+     * @param tiles The tiled image, or null.
+     */
+    public void openBackground(Image image, TiledImage tiles) {
         shapes.clear();
-        currentImage = null; // Clear the current image
+        shapeIndex.clear();
+        selectedShape = -1;
+        placeholderImage = null;
+        currentImage = image;
+        currentTiles = tiles;
+        isLayerValid = false;
+        hasPreview = false;
+        clearOverlay();
+        rebuildCommittedLayer();
+        history.reset(this);
+        savedEditCount = editCount; // Nothing to autosave until the user edits
+    }
+
+    /**
+     * Drops the document and every pixel it holds, including the cached layer
+     * and the undo history, e.g. for a tab that is not shown. The view is kept.
+     */
+    public void release() {
+        shapes.clear();
+        shapeIndex.clear();
+        selectedShape = -1;
+        placeholderImage = null;
+        currentImage = null;
+        currentTiles = null;
+        committedLayer = null;
+        isLayerValid = false;
+        hasPreview = false;
+        clearOverlay();
+        gc.setTransform(1, 0, 0, 1, 0, 0);
         gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        viewport.apply(gc);
+        history.reset(this);
+        savedEditCount = editCount;
+    }
+
+    /**
+     * Tells whether the document has no background and no shapes.
+     *
+     * @return true if there is nothing to draw.
+     */
+    public boolean isEmpty() {
+        return shapes.size() == 0 && currentImage == null && currentTiles == null && placeholderImage == null;
+    }
+
+    /**
+     * Tells whether there is anything to undo or redo.
+     *
+     * @return true if the history holds edits.
+     */
+    public boolean hasHistory() {
+        return history.canUndo() || history.canRedo();
+    }
+
+    /**
+     * Shows a low resolution preview in place of the background until the
+     * full image is set. The preview is not part of the document or its history.
+     *
+     * @param preview The preview, or null to remove it.
+     * @param width   The width of the full image the preview stands for.
+     * @param height  The height of the full image the preview stands for.
+     */
+    public void setPlaceholder(Image preview, double width, double height) {
+        placeholderImage = preview;
+        placeholderWidth = width;
+        placeholderHeight = height;
+        isLayerValid = false;
+        rebuildCommittedLayer();
+    }
+
+    public void clear() {
+        perform(new Edit.Clear());
     }
 
-    private class ShapeData {
-        String type;
-        double startX, startY, endX, endY;
-        boolean highlighted = false; // New property for highlighting
-        Color originalColor; // Store original color
-        Color color; // Current color for the shape
+    /**
+     * Filters the background image as an undoable edit.
+     *
+     * @param filter The filter to run.
+     * @throws IllegalStateException If there is no fully decoded background to filter.
+     */
+    public void filterImage(PixelFilter filter) {
+        checkFilterable();
+        perform(new Edit.Filter(filter));
+    }
+
+    /**
+     * Rotates or flips the background image and the shapes on it as an
+     * undoable edit.
+     *
+     * @param transform The rotation or flip.
+     * @throws IllegalStateException If there is no fully decoded background to transform.
+     */
+    public void transformImage(ImageTransform transform) {
+        checkFilterable();
+        perform(new Edit.Transform(transform));
+    }
 
-        ShapeData(String type, double startX, double startY, double endX, double endY) {
-            this.type = type;
-            this.startX = startX;
-            this.startY = startY;
-            this.endX = endX;
-            this.endY = endY;
-            this.originalColor = lineColor; // Set original color
-            this.color = originalColor; // Initialize current color
+    private void checkFilterable() {
+        if (currentTiles != null) {
+            throw new IllegalStateException("Image options are not available for images opened in tiles");
+        }
+        if (currentImage == null) {
+            throw new IllegalStateException(placeholderImage != null ? "The image is still loading" : "Open an image first");
         }
     }
-}
+}
\ No newline at end of file
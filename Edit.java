@@ -0,0 +1,235 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.paint.Color;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A single recorded change to a drawing. Edits are replayed in order on top of
+ * an UndoManager checkpoint to rebuild any earlier state of the document, and
+ * written to the OperationJournal so a crashed session can be rebuilt.
+ */
+public abstract class Edit {
+    private static final byte ADD_SHAPE = 1;
+    private static final byte ADD_STROKE = 2;
+    private static final byte CLEAR = 4; // 3 and 5 were selection and image loads, no longer recorded
+    private static final byte FILTER = 6;
+    private static final byte TRANSFORM = 7;
+    private static final byte ADD_FILL = 8;
+
+    /**
+     * Applies this edit to the drawing.
+     *
+     * @param canvas The drawing to change.
+     */
+    abstract void apply(DrawingCanvas canvas);
+
+    /**
+     * Writes this edit's type code and fields.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream fails.
+     */
+    abstract void write(DataOutput out) throws IOException;
+
+    /**
+     * Reads an edit written by write.
+     *
+     * @param in The stream to read from.
+     * @return The edit.
+     * @throws IOException If the stream fails or holds an unknown type code.
+     */
+    static Edit read(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ADD_SHAPE:
+                return new AddShape(in.readByte(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(),
+                        ShapeStore.fromArgb(in.readInt()), in.readDouble());
+            case ADD_STROKE: {
+                int count = in.readInt();
+                PenStroke stroke = new PenStroke(count);
+                for (int i = 0; i < count; i++) {
+                    stroke.add(in.readDouble(), in.readDouble());
+                }
+                return new AddStroke(stroke, ShapeStore.fromArgb(in.readInt()), in.readDouble());
+            }
+            case CLEAR:
+                return new Clear();
+            case FILTER:
+                return new Filter(new PixelFilter(in.readByte(), in.readDouble(), in.readDouble()));
+            case ADD_FILL: {
+                int[] rects = new int[in.readInt() * 4];
+                for (int i = 0; i < rects.length; i++) {
+                    rects[i] = in.readInt();
+                }
+                return new AddFill(rects, ShapeStore.fromArgb(in.readInt()));
+            }
+            case TRANSFORM:
+                return new Transform(new ImageTransform(in.readByte(), in.readDouble()));
+            default:
+                throw new IOException("Unknown edit type " + type);
+        }
+    }
+
+    /**
+     * Adds an outlined shape.
+     */
+    public static class AddShape extends Edit {
+        final byte kind;
+        final double startX, startY, endX, endY;
+        final Color color;
+        final double width;
+
+        public AddShape(byte kind, double startX, double startY, double endX, double endY, Color color, double width) {
+            this.kind = kind;
+            this.startX = startX;
+            this.startY = startY;
+            this.endX = endX;
+            this.endY = endY;
+            this.color = color;
+            this.width = width;
+        }
+
+        @Override
+        void apply(DrawingCanvas canvas) {
+            canvas.commitShape(kind, startX, startY, endX, endY, color, width);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(ADD_SHAPE);
+            out.writeByte(kind);
+            out.writeDouble(startX);
+            out.writeDouble(startY);
+            out.writeDouble(endX);
+            out.writeDouble(endY);
+            out.writeInt(ShapeStore.toArgb(color));
+            out.writeDouble(width);
+        }
+    }
+
+    /**
+     * Adds a simplified pen stroke.
+     */
+    public static class AddStroke extends Edit {
+        final PenStroke stroke;
+        final Color color;
+        final double width;
+
+        public AddStroke(PenStroke stroke, Color color, double width) {
+            this.stroke = stroke;
+            this.color = color;
+            this.width = width;
+        }
+
+        @Override
+        void apply(DrawingCanvas canvas) {
+            canvas.commitStroke(stroke, color, width);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(ADD_STROKE);
+            out.writeInt(stroke.size());
+            for (int i = 0; i < stroke.size(); i++) {
+                out.writeDouble(stroke.getX(i));
+                out.writeDouble(stroke.getY(i));
+            }
+            out.writeInt(ShapeStore.toArgb(color));
+            out.writeDouble(width);
+        }
+    }
+
+    /**
+     * Adds a paint bucket fill. The filled region is recorded rather than the
+     * click, so replaying gives the same result whatever was drawn since.
+     */
+    public static class AddFill extends Edit {
+        final int[] rects;
+        final Color color;
+
+        public AddFill(int[] rects, Color color) {
+            this.rects = rects;
+            this.color = color;
+        }
+
+        @Override
+        void apply(DrawingCanvas canvas) {
+            canvas.commitFill(rects, color);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(ADD_FILL);
+            out.writeInt(rects.length / 4);
+            for (int value : rects) {
+                out.writeInt(value);
+            }
+            out.writeInt(ShapeStore.toArgb(color));
+        }
+    }
+
+    /**
+     * Removes every shape and the background image.
+     */
+    public static class Clear extends Edit {
+        @Override
+        void apply(DrawingCanvas canvas) {
+            canvas.applyClear();
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(CLEAR);
+        }
+    }
+
+    /**
+     * Runs a pixel filter over the background image. Only the filter is
+     * recorded, so replaying the edit filters the image again.
+     */
+    public static class Filter extends Edit {
+        final PixelFilter filter;
+
+        public Filter(PixelFilter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        void apply(DrawingCanvas canvas) {
+            canvas.applyFilter(filter);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(FILTER);
+            out.writeByte(filter.getKind());
+            out.writeDouble(filter.getAmount());
+            out.writeDouble(filter.getStrength());
+        }
+    }
+
+    /**
+     * Rotates or flips the background image and the shapes on it.
+     */
+    public static class Transform extends Edit {
+        final ImageTransform transform;
+
+        public Transform(ImageTransform transform) {
+            this.transform = transform;
+        }
+
+        @Override
+        void apply(DrawingCanvas canvas) {
+            canvas.applyTransform(transform);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(TRANSFORM);
+            out.writeByte(transform.getKind());
+            out.writeDouble(transform.getDegrees());
+        }
+    }
+}
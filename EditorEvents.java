@@ -0,0 +1,87 @@
+package com.example.imageeditorjaden;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events for the editor's hot paths. They cost next to
+ * nothing unless a recording is running, e.g. one started with
+ * -XX:StartFlightRecording or from JDK Mission Control.
+ */
+public final class EditorEvents {
+    private EditorEvents() {
+    }
+
+    @Name("com.example.imageeditorjaden.Redraw")
+    @Label("Canvas Redraw")
+    @Description("Full repaint of the committed canvas: background and every shape")
+    @Category("Jaden Paint")
+    @StackTrace(false)
+    public static class Redraw extends Event {
+        @Label("Shapes Drawn")
+        int shapesDrawn;
+
+        @Label("Shape Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long shapeNanos;
+    }
+
+    @Name("com.example.imageeditorjaden.Selection")
+    @Label("Selection Hit Test")
+    @Category("Jaden Paint")
+    @StackTrace(false)
+    public static class Selection extends Event {
+        @Label("Shape Count")
+        int shapeCount;
+
+        @Label("Hit Shape")
+        int hit;
+    }
+
+    @Name("com.example.imageeditorjaden.Save")
+    @Label("Image Save")
+    @Description("Encoding and writing of a save, on the saver thread")
+    @Category("Jaden Paint")
+    @StackTrace(false)
+    public static class Save extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+
+        @Label("Pixel Grab Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long grabNanos;
+
+        @Label("Encode Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long encodeNanos;
+    }
+
+    @Name("com.example.imageeditorjaden.ImageLoad")
+    @Label("Image Load")
+    @Category("Jaden Paint")
+    @StackTrace(false)
+    public static class ImageLoad extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Time To Preview")
+        @Timespan(Timespan.NANOSECONDS)
+        long previewNanos;
+    }
+}
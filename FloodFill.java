@@ -0,0 +1,206 @@
+package com.example.imageeditorjaden;
+
+import java.util.Arrays;
+
+/**
+ * Scanline flood fill over an ARGB int buffer, as used by the paint bucket.
+ * Each step fills a whole horizontal run of matching pixels and pushes one
+ * seed per run found in the rows above and below it onto an explicit int
+ * stack, so large regions need neither recursion nor an object per pixel.
+ * The region is returned as rectangles: runs of the same extent on
+ * consecutive rows are merged, so a plain area becomes a handful of
+ * rectangles rather than one per row.
+ */
+public final class FloodFill {
+    private FloodFill() {
+    }
+
+    /**
+     * Finds the region connected to a seed pixel whose colours are within a
+     * tolerance of the seed's colour.
+     *
+     * @param pixels    The ARGB pixels, row by row.
+     * @param width     The width of the buffer.
+     * @param height    The height of the buffer.
+     * @param seedX     The x-coordinate of the seed pixel.
+     * @param seedY     The y-coordinate of the seed pixel.
+     * @param tolerance The largest difference in any channel, alpha included, from 0 to 255.
+     * @return The region as rectangles x0, y0, x1, y1 with exclusive ends, four ints per rectangle.
+     */
+    public static int[] fill(int[] pixels, int width, int height, int seedX, int seedY, int tolerance) {
+        if (seedX < 0 || seedY < 0 || seedX >= width || seedY >= height) {
+            return new int[0];
+        }
+        int seed = pixels[seedY * width + seedX];
+        long[] filled = new long[(width * height + 63) >>> 6]; // One bit per pixel
+        IntStack stack = new IntStack();
+        SpanList spans = new SpanList();
+        stack.push(seedY * width + seedX);
+
+        while (!stack.isEmpty()) {
+            int index = stack.pop();
+            if (isSet(filled, index)) {
+                continue; // Reached through another run meanwhile
+            }
+            int y = index / width;
+            int row = y * width;
+            int x0 = index - row;
+            int x1 = x0;
+            while (x0 > 0 && fillable(pixels, filled, row + x0 - 1, seed, tolerance)) {
+                x0--;
+            }
+            while (x1 < width - 1 && fillable(pixels, filled, row + x1 + 1, seed, tolerance)) {
+                x1++;
+            }
+            setRange(filled, row + x0, row + x1 + 1);
+            spans.add(x0, x1 + 1, y);
+            if (y > 0) {
+                pushRuns(pixels, filled, row - width, x0, x1, seed, tolerance, stack);
+            }
+            if (y < height - 1) {
+                pushRuns(pixels, filled, row + width, x0, x1, seed, tolerance, stack);
+            }
+        }
+        return spans.toRects();
+    }
+
+    /**
+     * Turns horizontal spans into rectangles, merging spans with the same
+     * extent on consecutive rows.
+     *
+     * @param spans Spans packed by pack.
+     * @param count The number of spans.
+     * @return Rectangles x0, y0, x1, y1 with exclusive ends, four ints per rectangle.
+     */
+    static int[] mergeSpans(long[] spans, int count) {
+        Arrays.sort(spans, 0, count); // Orders by x0, then x1, then y, so stackable spans end up adjacent
+        int[] rects = new int[count * 4];
+        int rectCount = 0;
+        for (int i = 0; i < count; ) {
+            int x0 = spanX0(spans[i]), x1 = spanX1(spans[i]), y0 = spanY(spans[i]);
+            int y1 = y0 + 1;
+            i++;
+            while (i < count && spanX0(spans[i]) == x0 && spanX1(spans[i]) == x1 && spanY(spans[i]) == y1) {
+                y1++;
+                i++;
+            }
+            rects[rectCount * 4] = x0;
+            rects[rectCount * 4 + 1] = y0;
+            rects[rectCount * 4 + 2] = x1;
+            rects[rectCount * 4 + 3] = y1;
+            rectCount++;
+        }
+        return Arrays.copyOf(rects, rectCount * 4);
+    }
+
+    /**
+     * Packs a span into a long that sorts by x0, then x1, then y. Each part
+     * must be below 2^21.
+     */
+    static long pack(int x0, int x1, int y) {
+        return ((long) x0 << 42) | ((long) x1 << 21) | y;
+    }
+
+    private static int spanX0(long span) {
+        return (int) (span >>> 42);
+    }
+
+    private static int spanX1(long span) {
+        return (int) (span >>> 21) & 0x1fffff;
+    }
+
+    private static int spanY(long span) {
+        return (int) span & 0x1fffff;
+    }
+
+    /**
+     * Pushes the first pixel of every fillable run between x0 and x1 of a row.
+     */
+    private static void pushRuns(int[] pixels, long[] filled, int row, int x0, int x1, int seed, int tolerance,
+                                 IntStack stack) {
+        boolean inRun = false;
+        for (int x = x0; x <= x1; x++) {
+            boolean fillable = fillable(pixels, filled, row + x, seed, tolerance);
+            if (fillable && !inRun) {
+                stack.push(row + x);
+            }
+            inRun = fillable;
+        }
+    }
+
+    private static boolean fillable(int[] pixels, long[] filled, int index, int seed, int tolerance) {
+        return !isSet(filled, index) && matches(pixels[index], seed, tolerance);
+    }
+
+    private static boolean matches(int argb, int seed, int tolerance) {
+        return argb == seed || Math.abs((argb >>> 24) - (seed >>> 24)) <= tolerance
+                && Math.abs(((argb >> 16) & 0xff) - ((seed >> 16) & 0xff)) <= tolerance
+                && Math.abs(((argb >> 8) & 0xff) - ((seed >> 8) & 0xff)) <= tolerance
+                && Math.abs((argb & 0xff) - (seed & 0xff)) <= tolerance;
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Sets the bits from start to end, exclusive, a word at a time.
+     */
+    private static void setRange(long[] bits, int start, int end) {
+        int first = start >>> 6;
+        int last = (end - 1) >>> 6;
+        long firstMask = -1L << start;
+        long lastMask = -1L >>> -end; // Shifts by 64 - end % 64
+        if (first == last) {
+            bits[first] |= firstMask & lastMask;
+            return;
+        }
+        bits[first] |= firstMask;
+        for (int i = first + 1; i < last; i++) {
+            bits[i] = -1L;
+        }
+        bits[last] |= lastMask;
+    }
+
+    /**
+     * Growable stack of pixel indexes.
+     */
+    private static class IntStack {
+        private int[] values = new int[1024];
+        private int size;
+
+        void push(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int pop() {
+            return values[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    /**
+     * Growable list of packed spans.
+     */
+    static class SpanList {
+        private long[] spans = new long[1024];
+        private int size;
+
+        void add(int x0, int x1, int y) {
+            if (size == spans.length) {
+                spans = Arrays.copyOf(spans, size * 2);
+            }
+            spans[size++] = pack(x0, x1, y);
+        }
+
+        int[] toRects() {
+            return mergeSpans(spans, size);
+        }
+    }
+}
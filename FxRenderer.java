@@ -0,0 +1,62 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
+
+/**
+ * Renderer backed by the GraphicsContext of a JavaFX Canvas. Must be used on
+ * the JavaFX thread.
+ */
+public class FxRenderer implements Renderer {
+    private final GraphicsContext gc;
+
+    public FxRenderer(GraphicsContext gc) {
+        this.gc = gc;
+    }
+
+    @Override
+    public void setStroke(Color color) {
+        gc.setStroke(color);
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        gc.setLineWidth(width);
+    }
+
+    @Override
+    public void strokeRect(double x, double y, double width, double height) {
+        gc.strokeRect(x, y, width, height);
+    }
+
+    @Override
+    public void strokeOval(double x, double y, double width, double height) {
+        gc.strokeOval(x, y, width, height);
+    }
+
+    @Override
+    public void strokePolygon(double[] xPoints, double[] yPoints, int count) {
+        gc.strokePolygon(xPoints, yPoints, count);
+    }
+
+    @Override
+    public void strokePolyline(double[] xPoints, double[] yPoints, int count) {
+        gc.save();
+        gc.setLineCap(StrokeLineCap.ROUND);
+        gc.setLineJoin(StrokeLineJoin.ROUND);
+        gc.strokePolyline(xPoints, yPoints, count);
+        gc.restore();
+    }
+
+    @Override
+    public void fillRects(double[] xPoints, double[] yPoints, int count) {
+        gc.save();
+        gc.setFill(gc.getStroke());
+        for (int i = 0; i + 1 < count; i += 2) {
+            gc.fillRect(xPoints[i], yPoints[i], xPoints[i + 1] - xPoints[i], yPoints[i + 1] - yPoints[i]);
+        }
+        gc.restore();
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoded images shared by every open document, so switching back to a file
+ * that was decoded recently costs a lookup instead of a decode. Entries are
+ * keyed by path, size and modification time, so a file changed on disk is
+ * decoded again. The cache has two least-recently-used tiers with separate
+ * byte budgets: images on the heap, ready to draw, and images demoted from
+ * the heap to direct buffers, which are cheap to copy back compared to
+ * decoding. Safe to use from any thread.
+ */
+public class ImageCache {
+    public static final long DEFAULT_HEAP_BYTES = Runtime.getRuntime().maxMemory() / 4;
+    public static final long DEFAULT_OFF_HEAP_BYTES = Math.min(512L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 2);
+
+    // Budgets can be set with -Djaden.imageCache.heapBytes=... and -Djaden.imageCache.offHeapBytes=...
+    private static final ImageCache GLOBAL = new ImageCache(Long.getLong("jaden.imageCache.heapBytes", DEFAULT_HEAP_BYTES),
+            Long.getLong("jaden.imageCache.offHeapBytes", DEFAULT_OFF_HEAP_BYTES));
+
+    private final LinkedHashMap<String, Image> heap = new LinkedHashMap<>(16, 0.75f, true); // Access order
+    private final LinkedHashMap<String, OffHeapImage> offHeap = new LinkedHashMap<>(16, 0.75f, true);
+    private long heapBudget, offHeapBudget;
+    private long heapBytes = 0, offHeapBytes = 0;
+    private long hits = 0, offHeapHits = 0, misses = 0;
+    private long heapEvictions = 0, offHeapEvictions = 0;
+
+    public ImageCache(long heapBudget, long offHeapBudget) {
+        this.heapBudget = heapBudget;
+        this.offHeapBudget = offHeapBudget;
+    }
+
+    /**
+     * Returns the cache shared by all documents.
+     *
+     * @return The global cache.
+     */
+    public static ImageCache global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Looks up the decoded image of a file in both tiers. An image found off
+     * the heap is copied back onto it, which takes about as long as copying
+     * its pixels.
+     *
+     * @param file The image file.
+     * @return The decoded image, or null if it is not cached.
+     */
+    public Image get(File file) {
+        String key = keyFor(file);
+        OffHeapImage stored;
+        synchronized (this) {
+            Image image = heap.get(key);
+            if (image != null) {
+                hits++;
+                return image;
+            }
+            stored = offHeap.remove(key);
+            if (stored == null) {
+                misses++;
+                return null;
+            }
+            offHeapBytes -= stored.bytes();
+            offHeapHits++;
+        }
+        Image image = stored.toImage(); // Copied outside the lock, other lookups need not wait
+        put(key, image);
+        return image;
+    }
+
+    /**
+     * Looks up the decoded image of a file on the heap only, which never
+     * copies pixels and so suits the JavaFX thread.
+     *
+     * @param file The image file.
+     * @return The decoded image, or null if it is not on the heap.
+     */
+    public synchronized Image getOnHeap(File file) {
+        Image image = heap.get(keyFor(file));
+        if (image != null) {
+            hits++;
+        }
+        return image;
+    }
+
+    /**
+     * Adds the decoded image of a file. Images larger than the heap budget are
+     * not cached.
+     *
+     * @param file  The image file.
+     * @param image The decoded image.
+     */
+    public void put(File file, Image image) {
+        put(keyFor(file), image);
+    }
+
+    private synchronized void put(String key, Image image) {
+        long bytes = bytesOf(image);
+        if (bytes > heapBudget) {
+            return;
+        }
+        Image previous = heap.put(key, image);
+        if (previous != null) {
+            heapBytes -= bytesOf(previous);
+        }
+        heapBytes += bytes;
+        evictHeapOverBudget(key);
+    }
+
+    /**
+     * Changes the budgets, evicting entries if they are now over them.
+     *
+     * @param heapBudget    The bytes of decoded pixels kept on the heap.
+     * @param offHeapBudget The bytes of pixels kept in direct buffers; 0 disables the tier.
+     */
+    public synchronized void setBudgets(long heapBudget, long offHeapBudget) {
+        this.heapBudget = heapBudget;
+        this.offHeapBudget = offHeapBudget;
+        evictHeapOverBudget(null);
+        evictOffHeapOverBudget();
+    }
+
+    /**
+     * Tells which share of lookups found the image in either tier.
+     *
+     * @return The hit rate from 0 to 1, or 0 before the first lookup.
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + offHeapHits + misses;
+        return lookups == 0 ? 0 : (double) (hits + offHeapHits) / lookups;
+    }
+
+    public synchronized long getEvictionCount() {
+        return heapEvictions + offHeapEvictions;
+    }
+
+    /**
+     * Formats the cache statistics as a few lines of text for the HUD.
+     *
+     * @return The summary.
+     */
+    public synchronized String summary() {
+        return String.format("image cache  heap %d/%d MB (%d)  off-heap %d/%d MB (%d)%n"
+                        + "             hit rate %.0f%%  %d hits  %d off-heap  %d misses  evicted %d + %d",
+                heapBytes >> 20, heapBudget >> 20, heap.size(), offHeapBytes >> 20, offHeapBudget >> 20, offHeap.size(),
+                getHitRate() * 100, hits, offHeapHits, misses, heapEvictions, offHeapEvictions);
+    }
+
+    /**
+     * Moves the least recently used heap images off the heap until the heap
+     * is within its budget. The image just added is kept.
+     */
+    private void evictHeapOverBudget(String keep) {
+        Iterator<Map.Entry<String, Image>> eldest = heap.entrySet().iterator();
+        while (heapBytes > heapBudget && eldest.hasNext()) {
+            Map.Entry<String, Image> entry = eldest.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            heapBytes -= bytesOf(entry.getValue());
+            eldest.remove();
+            heapEvictions++;
+            demote(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void demote(String key, Image image) {
+        long bytes = bytesOf(image);
+        if (bytes > offHeapBudget) {
+            return;
+        }
+        OffHeapImage stored;
+        try {
+            stored = OffHeapImage.of(image);
+        } catch (OutOfMemoryError e) {
+            return; // Direct memory is capped separately from the budget; dropping the image is fine
+        }
+        offHeap.put(key, stored);
+        offHeapBytes += bytes;
+        evictOffHeapOverBudget();
+    }
+
+    private void evictOffHeapOverBudget() {
+        // Dropped buffers are freed by the garbage collector
+        Iterator<OffHeapImage> eldest = offHeap.values().iterator();
+        while (offHeapBytes > offHeapBudget && eldest.hasNext()) {
+            offHeapBytes -= eldest.next().bytes();
+            eldest.remove();
+            offHeapEvictions++;
+        }
+    }
+
+    private static String keyFor(File file) {
+        return file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified();
+    }
+
+    private static long bytesOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+
+    /**
+     * ARGB pixels of an image in a direct buffer, outside the Java heap.
+     */
+    private static class OffHeapImage {
+        final IntBuffer pixels;
+        final int width, height;
+
+        private OffHeapImage(IntBuffer pixels, int width, int height) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+
+        static OffHeapImage of(Image image) {
+            int width = (int) image.getWidth();
+            int height = (int) image.getHeight();
+            IntBuffer pixels = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+            image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, width);
+            return new OffHeapImage(pixels, width, height);
+        }
+
+        Image toImage() {
+            WritableImage image = new WritableImage(width, height);
+            image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels.rewind(), width);
+            return image;
+        }
+
+        long bytes() {
+            return (long) width * height * 4;
+        }
+    }
+}
@@ -0,0 +1,635 @@
+package com.example.imageeditorjaden;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Encodes ARGB pixels in the format named by a file's extension. PNG has its
+ * own encoder: rows are filtered and deflated in independent chunks on the
+ * common fork-join pool, like pigz, and the chunks are joined into one valid
+ * zlib stream. Each chunk but the last ends on a sync flush so the next one
+ * starts on a byte boundary, and is primed with the last 32 KB of the chunk
+ * before it, so the ratio stays within a fraction of a percent of a serial
+ * encode. Opaque images are written without an alpha channel. JPEG, GIF and
+ * BMP go through ImageIO, JPEG with an explicit quality. Encoders are
+ * immutable and safe to share between threads.
+ */
+public class ImageEncoder {
+    /**
+     * The PNG row filter. ADAPTIVE picks the filter per row with the smallest
+     * sum of absolute differences, as libpng does.
+     */
+    public enum PngFilter { NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE }
+
+    public static final int DEFAULT_PNG_LEVEL = 6;
+    public static final float DEFAULT_JPG_QUALITY = 0.9f;
+
+    private static final int CHUNK_BYTES = 512 * 1024; // Filtered bytes deflated per task
+    private static final int MIN_CHUNK_ROWS = 32; // Wide images still get enough rows per chunk for the dictionary
+    private static final int DICTIONARY_BYTES = 32 * 1024; // The deflate window
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    // Per-worker deflaters, so chunks allocate no native memory once the pool is warm
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(DEFAULT_PNG_LEVEL, true));
+
+    private final int pngLevel;
+    private final PngFilter pngFilter;
+    private final float jpgQuality;
+
+    /**
+     * @param pngLevel   The deflate level of PNGs, from 0 (stored) to 9 (smallest).
+     * @param pngFilter  The PNG row filter.
+     * @param jpgQuality The JPEG quality, from 0 to 1.
+     */
+    public ImageEncoder(int pngLevel, PngFilter pngFilter, float jpgQuality) {
+        if (pngLevel < 0 || pngLevel > 9) {
+            throw new IllegalArgumentException("PNG level must be 0 to 9: " + pngLevel);
+        }
+        if (jpgQuality < 0 || jpgQuality > 1) {
+            throw new IllegalArgumentException("JPG quality must be 0 to 1: " + jpgQuality);
+        }
+        this.pngLevel = pngLevel;
+        this.pngFilter = pngFilter;
+        this.jpgQuality = jpgQuality;
+    }
+
+    public static ImageEncoder defaults() {
+        return new ImageEncoder(DEFAULT_PNG_LEVEL, PngFilter.ADAPTIVE, DEFAULT_JPG_QUALITY);
+    }
+
+    public int getPngLevel() {
+        return pngLevel;
+    }
+
+    public PngFilter getPngFilter() {
+        return pngFilter;
+    }
+
+    public float getJpgQuality() {
+        return jpgQuality;
+    }
+
+    /**
+     * Names the format a file is saved in from its extension. Unknown
+     * extensions are saved as PNG; SVG and PDF are written by VectorExporter.
+     *
+     * @param file The file to write.
+     * @return "png", "jpg", "gif", "bmp", "svg" or "pdf".
+     */
+    public static String formatOf(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        String extension = name.substring(name.lastIndexOf('.') + 1);
+        switch (extension) {
+            case "jpg":
+            case "jpeg":
+                return "jpg";
+            case "gif":
+            case "bmp":
+            case "svg":
+            case "pdf":
+                return extension;
+            default:
+                return "png";
+        }
+    }
+
+    /**
+     * Supplies ARGB pixels a band of rows at a time, so an image can be encoded
+     * without ever being held whole. PNG chunks ask for their rows from
+     * several threads at once; each row is asked for once.
+     */
+    public interface RowSource {
+        /**
+         * Writes rows y..y+rows-1 into out, starting at offset, width pixels per row.
+         */
+        void readRows(int y, int rows, int[] out, int offset);
+
+        /**
+         * Tells whether every pixel is opaque, so PNGs can leave out the alpha channel.
+         */
+        boolean isOpaque();
+    }
+
+    /**
+     * Encodes ARGB pixels to a stream. The stream is not closed.
+     *
+     * @param pixels The pixels, row by row.
+     * @param width  The image width.
+     * @param height The image height.
+     * @param format "png", "jpg", "gif" or "bmp".
+     * @param out    The stream to write to.
+     * @throws IOException If writing fails or there is no writer for the format.
+     */
+    public void encode(int[] pixels, int width, int height, String format, OutputStream out) throws IOException {
+        switch (format) {
+            case "png":
+                encodePng(pixels, width, height, out);
+                break;
+            case "jpg":
+                encodeJpg(wrapRgb(pixels, width, height), out);
+                break;
+            case "bmp":
+                write(wrapRgb(pixels, width, height), format, out); // BMP has no alpha channel either
+                break;
+            default:
+                write(ImageSaver.wrap(pixels, width, height), format, out);
+                break;
+        }
+    }
+
+    /**
+     * Encodes the rows of a source to a stream. PNGs are streamed, holding
+     * only the chunks in flight; the ImageIO writers used for the other
+     * formats take the whole raster, so the rows are gathered first, in
+     * parallel bands.
+     *
+     * @param source The pixels.
+     * @param width  The image width.
+     * @param height The image height.
+     * @param format "png", "jpg", "gif" or "bmp".
+     * @param out    The stream to write to.
+     * @throws IOException If writing fails or there is no writer for the format.
+     */
+    public void encode(RowSource source, int width, int height, String format, OutputStream out) throws IOException {
+        if (format.equals("png")) {
+            encodePng(source, width, height, out);
+            return;
+        }
+        int[] pixels = new int[width * height];
+        PixelFilter.inBands(height, (from, to) -> source.readRows(from, to - from, pixels, from * width));
+        encode(pixels, width, height, format, out);
+    }
+
+    /**
+     * Encodes a PNG from pixels in memory.
+     */
+    public void encodePng(int[] pixels, int width, int height, OutputStream out) throws IOException {
+        boolean isOpaque = isOpaque(pixels, width * height);
+        encodePng(new RowSource() {
+            @Override
+            public void readRows(int y, int rows, int[] target, int offset) {
+                System.arraycopy(pixels, y * width, target, offset, rows * width);
+            }
+
+            @Override
+            public boolean isOpaque() {
+                return isOpaque;
+            }
+        }, width, height, out);
+    }
+
+    /**
+     * Encodes a PNG, reading and deflating chunks of rows in parallel. Every
+     * row is read once: a chunk filters its first row and primes its
+     * dictionary from the rows the chunk before it read, so sources need not
+     * give the same pixels twice. At most two chunks per worker are in
+     * flight, so memory stays bounded for any image size.
+     */
+    public void encodePng(RowSource source, int width, int height, OutputStream out) throws IOException {
+        boolean isOpaque = source.isOpaque();
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; // Bits per channel
+        header[9] = (byte) (isOpaque ? 2 : 6); // Truecolor, with alpha if any pixel is translucent
+        writeChunk(data, "IHDR", header, 0, header.length, null);
+        deflateImage(source, width, height, (bytes, length, trailer) -> writeChunk(data, "IDAT", bytes, 0, length, trailer));
+        writeChunk(data, "IEND", new byte[0], 0, 0, null);
+        data.flush();
+    }
+
+    /**
+     * Writes the filtered and deflated rows of a source as one zlib stream,
+     * the data a PNG keeps in its IDAT chunks. PDF reads it as an image
+     * stream with the PNG predictor, RGB if the source is opaque, else RGBA.
+     */
+    public void encodeZlib(RowSource source, int width, int height, OutputStream out) throws IOException {
+        deflateImage(source, width, height, (bytes, length, trailer) -> {
+            out.write(bytes, 0, length);
+            if (trailer != null) {
+                out.write(trailer);
+            }
+        });
+    }
+
+    private void deflateImage(RowSource source, int width, int height, BlockSink sink) throws IOException {
+        boolean isOpaque = source.isOpaque();
+        int rowBytes = 1 + width * (isOpaque ? 3 : 4); // Each row starts with its filter type
+        int chunkRows = Math.max(MIN_CHUNK_ROWS, CHUNK_BYTES / rowBytes);
+        int chunks = (height + chunkRows - 1) / chunkRows;
+
+        int window = Math.max(1, 2 * ForkJoinPool.commonPool().getParallelism());
+        ArrayDeque<CompletableFuture<Chunk>> inFlight = new ArrayDeque<>(window); // In chunk order
+        CompletableFuture<int[]> lastRead = null; // Rows of the chunk submitted last
+        for (int i = 0; i < Math.min(window, chunks); i++) {
+            CompletableFuture<int[]> above = lastRead;
+            lastRead = readRows(source, width, height, i * chunkRows, chunkRows, chunks);
+            inFlight.add(submitChunk(lastRead, above, width, height, isOpaque, i * chunkRows, chunkRows));
+        }
+        long adler = 1;
+        for (int i = 0; i < chunks; i++) {
+            Chunk chunk;
+            try {
+                chunk = inFlight.remove().join();
+            } catch (RuntimeException e) {
+                throw new IOException("PNG encoding failed", e);
+            }
+            if (i + window < chunks) {
+                CompletableFuture<int[]> above = lastRead;
+                lastRead = readRows(source, width, height, (i + window) * chunkRows, chunkRows, chunks);
+                inFlight.add(submitChunk(lastRead, above, width, height, isOpaque, (i + window) * chunkRows,
+                        chunkRows));
+            }
+            adler = combineAdler32(adler, chunk.adler, chunk.inputBytes);
+            byte[] trailer = null;
+            if (i == chunks - 1) {
+                trailer = new byte[4];
+                putInt(trailer, 0, (int) adler);
+            }
+            sink.write(chunk.bytes, chunk.length, trailer);
+        }
+    }
+
+    private static CompletableFuture<int[]> readRows(RowSource source, int width, int height, int from, int chunkRows,
+                                                     int chunks) {
+        int rows = Math.min(height, from + chunkRows) - from;
+        if (chunks == 1) {
+            // Nothing to overlap with, so skip the hand-off to the pool
+            int[] pixels = new int[rows * width];
+            source.readRows(from, rows, pixels, 0);
+            return CompletableFuture.completedFuture(pixels);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            int[] pixels = new int[rows * width];
+            source.readRows(from, rows, pixels, 0);
+            return pixels;
+        }, ForkJoinPool.commonPool());
+    }
+
+    private CompletableFuture<Chunk> submitChunk(CompletableFuture<int[]> read, CompletableFuture<int[]> above, int width,
+                                                 int height, boolean isOpaque, int from, int chunkRows) {
+        int to = Math.min(height, from + chunkRows);
+        boolean isLast = to == height;
+        if (above == null) {
+            return read.thenApply(pixels -> deflateRows(pixels, null, width, isOpaque, from, to, isLast));
+        }
+        return read.thenCombineAsync(above, (pixels, abovePixels) -> deflateRows(pixels, abovePixels, width, isOpaque, from,
+                to, isLast), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Filters and deflates rows from..to into a raw deflate block. The first
+     * chunk gets the zlib header in front; the others are primed with the
+     * filtered tail of the rows above, which the previous chunk read.
+     *
+     * @param pixels The rows from..to.
+     * @param above  The rows of the previous chunk, ending at from; null for the first chunk.
+     */
+    private Chunk deflateRows(int[] pixels, int[] above, int width, boolean isOpaque, int from, int to, boolean isLast) {
+        boolean isFirst = above == null;
+        int channels = isOpaque ? 3 : 4;
+        int rowBytes = 1 + width * channels;
+        byte[] input = new byte[(to - from) * rowBytes];
+        int aboveRows = isFirst ? 0 : above.length / width;
+        RowFilter filter = new RowFilter(pixels, from, above, from - aboveRows, width, channels, pngFilter);
+        filter.filterRows(from, to, input);
+
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setLevel(pngLevel);
+        deflater.setStrategy(Deflater.DEFAULT_STRATEGY);
+        int dictionaryRows = isFirst || pngLevel == 0 ? 0
+                : Math.min(aboveRows - 1, (DICTIONARY_BYTES + rowBytes - 1) / rowBytes); // Keeps one row above them
+        if (dictionaryRows > 0) {
+            byte[] previous = new byte[dictionaryRows * rowBytes];
+            filter.filterRows(from - dictionaryRows, from, previous);
+            int length = Math.min(DICTIONARY_BYTES, previous.length);
+            deflater.setDictionary(previous, previous.length - length, length);
+        }
+        deflater.setInput(input);
+
+        int offset = isFirst ? 2 : 0;
+        byte[] output = new byte[offset + input.length / 2 + 1024];
+        if (isFirst) {
+            output[0] = 0x78; // Deflate with a 32 KB window
+            output[1] = zlibFlags(pngLevel);
+        }
+        int length = offset;
+        if (isLast) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                length += deflater.deflate(output, length, output.length - length);
+            }
+        } else {
+            // A sync flush ends on a byte boundary, so the next chunk's block can follow it directly.
+            // A call that only applies a new level consumes no input, hence the needsInput check.
+            do {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                length += deflater.deflate(output, length, output.length - length, Deflater.SYNC_FLUSH);
+            } while (length == output.length || !deflater.needsInput());
+        }
+        Adler32 adler = new Adler32();
+        adler.update(input);
+        return new Chunk(output, length, (int) adler.getValue(), input.length);
+    }
+
+    private static boolean isOpaque(int[] pixels, int count) {
+        int alpha = 0xff000000;
+        for (int i = 0; i < count; i++) {
+            alpha &= pixels[i];
+        }
+        return alpha == 0xff000000;
+    }
+
+    private static byte zlibFlags(int level) {
+        // FLEVEL in the top two bits, then the check bits that make the header a multiple of 31
+        int flevel = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+        int flags = flevel << 6;
+        flags += 31 - (0x78 * 256 + flags) % 31;
+        return (byte) flags;
+    }
+
+    /**
+     * The Adler-32 of two byte runs joined, from the checksum of each run
+     * and the length of the second, as zlib's adler32_combine computes it.
+     */
+    static long combineAdler32(long adler1, int adler2, long length2) {
+        final long base = 65521;
+        long remainder = length2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (remainder * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + base - remainder;
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum2 >= base << 1) {
+            sum2 -= base << 1;
+        }
+        if (sum2 >= base) {
+            sum2 -= base;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] bytes, int offset, int length,
+                                   byte[] trailer) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        int trailerLength = trailer == null ? 0 : trailer.length;
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(bytes, offset, length);
+        out.writeInt(length + trailerLength);
+        out.write(typeBytes);
+        out.write(bytes, offset, length);
+        if (trailer != null) {
+            crc.update(trailer);
+            out.write(trailer);
+        }
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private void encodeJpg(BufferedImage image, OutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPG writer available");
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpgQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static void write(BufferedImage image, String format, OutputStream out) throws IOException {
+        if (!ImageIO.write(image, format, out)) {
+            throw new IOException("No " + format.toUpperCase(Locale.ROOT) + " writer available");
+        }
+    }
+
+    /**
+     * Wraps ARGB pixels as RGB without copying them, for formats without alpha.
+     */
+    static BufferedImage wrapRgb(int[] pixels, int width, int height) {
+        DirectColorModel colorModel = new DirectColorModel(24, 0x00ff0000, 0x0000ff00, 0x000000ff);
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, width * height), width, height, width,
+                colorModel.getMasks(), null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private static class Chunk {
+        final byte[] bytes;
+        final int length;
+        final int adler; // Adler-32 of the filtered rows, before compression
+        final int inputBytes;
+
+        Chunk(byte[] bytes, int length, int adler, int inputBytes) {
+            this.bytes = bytes;
+            this.length = length;
+            this.adler = adler;
+            this.inputBytes = inputBytes;
+        }
+    }
+
+    /**
+     * Takes the deflated chunks in order; the last one comes with the Adler-32
+     * trailer of the zlib stream.
+     */
+    private interface BlockSink {
+        void write(byte[] bytes, int length, byte[] trailer) throws IOException;
+    }
+
+    /**
+     * Turns pixel rows into filtered PNG rows. Only depends on the row above,
+     * so any range of rows can be filtered on its own, given the row above it.
+     */
+    private static class RowFilter {
+        private final int[] pixels; // Rows from firstRow on
+        private final int firstRow;
+        private final int[] above; // Rows from aboveFirstRow up to firstRow, may be null
+        private final int aboveFirstRow;
+        private final int width, channels, rowBytes;
+        private final PngFilter filter;
+        private byte[] current, previous;
+        private final byte[][] candidates = new byte[5][];
+
+        RowFilter(int[] pixels, int firstRow, int[] above, int aboveFirstRow, int width, int channels, PngFilter filter) {
+            this.pixels = pixels;
+            this.firstRow = firstRow;
+            this.above = above;
+            this.aboveFirstRow = aboveFirstRow;
+            this.width = width;
+            this.channels = channels;
+            this.rowBytes = width * channels;
+            this.filter = filter;
+            current = new byte[rowBytes];
+            previous = new byte[rowBytes];
+            if (filter == PngFilter.ADAPTIVE) {
+                for (int i = 0; i < candidates.length; i++) {
+                    candidates[i] = new byte[rowBytes];
+                }
+            }
+        }
+
+        void filterRows(int from, int to, byte[] out) {
+            if (from > 0) {
+                unpack(from - 1, previous);
+            } else {
+                Arrays.fill(previous, (byte) 0); // The row above the first is all zero
+            }
+            int offset = 0;
+            for (int y = from; y < to; y++) {
+                unpack(y, current);
+                if (filter == PngFilter.ADAPTIVE) {
+                    int best = 0;
+                    long bestSum = Long.MAX_VALUE;
+                    for (int type = 0; type < candidates.length; type++) {
+                        long sum = apply(type, candidates[type], 0);
+                        if (sum < bestSum) {
+                            bestSum = sum;
+                            best = type;
+                        }
+                    }
+                    out[offset] = (byte) best;
+                    System.arraycopy(candidates[best], 0, out, offset + 1, rowBytes);
+                } else {
+                    out[offset] = (byte) filter.ordinal();
+                    apply(filter.ordinal(), out, offset + 1);
+                }
+                offset += 1 + rowBytes;
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+        }
+
+        private void unpack(int y, byte[] row) {
+            int[] source = y >= firstRow ? pixels : above;
+            int index = (y - (y >= firstRow ? firstRow : aboveFirstRow)) * width;
+            int offset = 0;
+            if (channels == 3) {
+                for (int x = 0; x < width; x++, offset += 3) {
+                    int argb = source[index + x];
+                    row[offset] = (byte) (argb >> 16);
+                    row[offset + 1] = (byte) (argb >> 8);
+                    row[offset + 2] = (byte) argb;
+                }
+            } else {
+                for (int x = 0; x < width; x++, offset += 4) {
+                    int argb = source[index + x];
+                    row[offset] = (byte) (argb >> 16);
+                    row[offset + 1] = (byte) (argb >> 8);
+                    row[offset + 2] = (byte) argb;
+                    row[offset + 3] = (byte) (argb >>> 24);
+                }
+            }
+        }
+
+        /**
+         * Writes current filtered by one filter type into out. Each type has
+         * its own loop, so the per-byte work has no branches to mispredict.
+         *
+         * @return The sum of the filtered bytes taken as signed, for choosing a filter.
+         */
+        private long apply(int type, byte[] out, int offset) {
+            byte[] row = current;
+            byte[] above = previous;
+            int bpp = channels;
+            long sum = 0;
+            switch (type) {
+                case 1: // Sub
+                    for (int i = 0; i < bpp; i++) {
+                        sum += Math.abs(out[offset + i] = row[i]);
+                    }
+                    for (int i = bpp; i < rowBytes; i++) {
+                        sum += Math.abs(out[offset + i] = (byte) (row[i] - row[i - bpp]));
+                    }
+                    break;
+                case 2: // Up
+                    for (int i = 0; i < rowBytes; i++) {
+                        sum += Math.abs(out[offset + i] = (byte) (row[i] - above[i]));
+                    }
+                    break;
+                case 3: // Average
+                    for (int i = 0; i < bpp; i++) {
+                        sum += Math.abs(out[offset + i] = (byte) (row[i] - ((above[i] & 0xff) >>> 1)));
+                    }
+                    for (int i = bpp; i < rowBytes; i++) {
+                        int average = ((row[i - bpp] & 0xff) + (above[i] & 0xff)) >>> 1;
+                        sum += Math.abs(out[offset + i] = (byte) (row[i] - average));
+                    }
+                    break;
+                case 4: // Paeth, which predicts from the byte above when there is nothing to the left
+                    for (int i = 0; i < bpp; i++) {
+                        sum += Math.abs(out[offset + i] = (byte) (row[i] - above[i]));
+                    }
+                    for (int i = bpp; i < rowBytes; i++) {
+                        int predicted = paeth(row[i - bpp] & 0xff, above[i] & 0xff, above[i - bpp] & 0xff);
+                        sum += Math.abs(out[offset + i] = (byte) (row[i] - predicted));
+                    }
+                    break;
+                default: // None
+                    for (int i = 0; i < rowBytes; i++) {
+                        sum += Math.abs(out[offset + i] = row[i]);
+                    }
+                    break;
+            }
+            return sum;
+        }
+
+        private static int paeth(int left, int up, int upLeft) {
+            // libpng's form: the distances come from two differences, and the picks are selects, not branches
+            int fromUp = up - upLeft;
+            int fromLeft = left - upLeft;
+            int toLeft = Math.abs(fromUp);
+            int toUp = Math.abs(fromLeft);
+            int toUpLeft = Math.abs(fromUp + fromLeft);
+            int best = toUp < toLeft ? up : left;
+            return toUpLeft < Math.min(toLeft, toUp) ? upLeft : best;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.imageeditorjaden;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes images on a background thread so opening a file never blocks the
+ * JavaFX thread. A small preview is delivered first, from the file's embedded
+ * thumbnail when it has one and otherwise from a subsampled decode, and the
+ * full resolution image follows with progress updates. Starting a new load
+ * cancels the previous one. Decoded images go into an ImageCache, and a file
+ * that is still cached is delivered without decoding it again. All loaders
+ * share one decoding thread, however many documents are open.
+ */
+public class ImageLoader {
+    public static final int PREVIEW_SIZE = 1024; // Longest edge of the preview, in pixels
+    private static final int CONVERT_BAND_ROWS = 64; // Rows converted to JavaFX pixels at a time
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "image-loader");
+        thread.setDaemon(true); // Do not keep the application alive
+        return thread;
+    });
+    private final AtomicInteger generation = new AtomicInteger(); // Bumped to cancel the running load
+    private volatile boolean isLoading = false;
+    private final ImageCache cache;
+
+    /**
+     * Creates a loader that shares decoded images through the global cache.
+     */
+    public ImageLoader() {
+        this(ImageCache.global());
+    }
+
+    public ImageLoader(ImageCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Receives the results of a load. Every method is called on the JavaFX
+     * thread, and none is called once the load has been cancelled. For an
+     * image that is cached on the heap, loaded is called before load returns.
+     */
+    public interface Listener {
+        void previewReady(Image preview, int width, int height);
+
+        void progress(double fraction);
+
+        void loaded(Image image);
+
+        void failed(Exception error);
+    }
+
+    /**
+     * Starts loading a file, cancelling any load still running.
+     *
+     * @param file     The image file.
+     * @param listener Receives the preview, progress and result.
+     */
+    public void load(File file, Listener listener) {
+        int id = generation.incrementAndGet();
+        Image cached = cache.getOnHeap(file);
+        if (cached != null) {
+            isLoading = false;
+            listener.loaded(cached); // Already decoded, so there is nothing to wait for
+            return;
+        }
+        isLoading = true;
+        executor.execute(() -> run(file, id, listener));
+    }
+
+    /**
+     * Cancels the running load, if any. Its listener is not called again.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+        isLoading = false;
+    }
+
+    public boolean isLoading() {
+        return isLoading;
+    }
+
+    private void run(File file, int id, Listener listener) {
+        if (!isCurrent(id)) {
+            return; // Cancelled while queued
+        }
+        long start = System.nanoTime();
+        EditorEvents.ImageLoad event = new EditorEvents.ImageLoad();
+        event.begin();
+        try {
+            Image cached = cache.get(file); // May have been moved off the heap since load() looked
+            if (cached != null) {
+                deliver(id, () -> {
+                    isLoading = false;
+                    listener.loaded(cached);
+                });
+                return;
+            }
+            int[] size = new int[2];
+            Image preview = readPreview(file, size);
+            long previewNanos = System.nanoTime() - start;
+            if (preview != null) {
+                deliver(id, () -> listener.previewReady(preview, size[0], size[1]));
+            }
+
+            Image image = readFull(file, id, listener);
+            if (image != null) {
+                cache.put(file, image);
+                long nanos = System.nanoTime() - start;
+                PerfStats.global().recordLoad(nanos, preview != null ? previewNanos : nanos);
+                event.file = file.getPath();
+                event.width = size[0];
+                event.height = size[1];
+                event.previewNanos = preview != null ? previewNanos : nanos;
+                event.commit();
+                deliver(id, () -> {
+                    isLoading = false;
+                    listener.loaded(image);
+                });
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            deliver(id, () -> {
+                isLoading = false;
+                listener.failed(e);
+            });
+        }
+    }
+
+    /**
+     * Reads a preview no larger than PREVIEW_SIZE, and the full image size.
+     */
+    private Image readPreview(File file, int[] size) throws IOException {
+        try (ImageInputStream input = openStream(file)) {
+            ImageReader reader = TiledImage.readerFor(input);
+            try {
+                size[0] = reader.getWidth(0);
+                size[1] = reader.getHeight(0);
+                if (Math.max(size[0], size[1]) <= PREVIEW_SIZE) {
+                    return null; // Small enough that the full image is the preview
+                }
+                if (reader.readerSupportsThumbnails() && reader.hasThumbnails(0)) {
+                    return toFxImage(reader.readThumbnail(0, 0)); // Embedded thumbnails need no decoding of the image
+                }
+                int step = (Math.max(size[0], size[1]) + PREVIEW_SIZE - 1) / PREVIEW_SIZE;
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return toFxImage(reader.read(0, param));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes the full image, reporting progress and stopping early if the
+     * load is cancelled.
+     *
+     * @return The image, or null if the load was cancelled.
+     */
+    private Image readFull(File file, int id, Listener listener) throws IOException {
+        try (ImageInputStream input = openStream(file)) {
+            ImageReader reader = TiledImage.readerFor(input);
+            try {
+                reader.addIIOReadProgressListener(new ProgressForwarder(id, listener));
+                BufferedImage decoded = reader.read(0);
+                return isCurrent(id) ? toFxImage(decoded) : null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static ImageInputStream openStream(File file) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(file);
+        if (input == null) {
+            throw new IOException("Cannot read " + file);
+        }
+        return input;
+    }
+
+    /**
+     * Copies a decoded image into a JavaFX image a band of rows at a time, so
+     * only one extra band of pixels is held during the conversion.
+     */
+    static WritableImage toFxImage(BufferedImage decoded) {
+        int width = decoded.getWidth();
+        int height = decoded.getHeight();
+        WritableImage image = new WritableImage(width, height);
+        PixelWriter writer = image.getPixelWriter();
+        int[] band = new int[width * Math.min(CONVERT_BAND_ROWS, height)];
+        for (int y = 0; y < height; y += CONVERT_BAND_ROWS) {
+            int rows = Math.min(CONVERT_BAND_ROWS, height - y);
+            decoded.getRGB(0, y, width, rows, band, 0, width);
+            writer.setPixels(0, y, width, rows, PixelFormat.getIntArgbInstance(), band, 0, width);
+        }
+        return image;
+    }
+
+    private boolean isCurrent(int id) {
+        return generation.get() == id;
+    }
+
+    private void deliver(int id, Runnable callback) {
+        Platform.runLater(() -> {
+            if (isCurrent(id)) { // A newer load may have started meanwhile
+                callback.run();
+            }
+        });
+    }
+
+    /**
+     * Forwards decoder progress to the listener in whole percent steps and
+     * aborts the decode once the load is cancelled.
+     */
+    private class ProgressForwarder implements IIOReadProgressListener {
+        private final int id;
+        private final Listener listener;
+        private int lastPercent = -1;
+
+        ProgressForwarder(int id, Listener listener) {
+            this.id = id;
+            this.listener = listener;
+        }
+
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone) {
+            if (!isCurrent(id)) {
+                source.abort();
+                return;
+            }
+            int percent = (int) percentageDone;
+            if (percent != lastPercent) {
+                lastPercent = percent;
+                deliver(id, () -> listener.progress(percent / 100.0));
+            }
+        }
+
+        @Override
+        public void imageStarted(ImageReader source, int imageIndex) {
+        }
+
+        @Override
+        public void imageComplete(ImageReader source) {
+        }
+
+        @Override
+        public void sequenceStarted(ImageReader source, int minIndex) {
+        }
+
+        @Override
+        public void sequenceComplete(ImageReader source) {
+        }
+
+        @Override
+        public void readAborted(ImageReader source) {
+        }
+
+        @Override
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+        }
+
+        @Override
+        public void thumbnailProgress(ImageReader source, float percentageDone) {
+        }
+
+        @Override
+        public void thumbnailComplete(ImageReader source) {
+        }
+    }
+}
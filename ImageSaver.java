@@ -0,0 +1,176 @@
+package com.example.imageeditorjaden;
+
+import javafx.application.Platform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Saves documents without blocking the JavaFX thread. Only the capture of the
+ * document runs on the caller's thread; rendering, encoding and writing run
+ * on a background thread, at the document's full resolution and in the
+ * format named by the file's extension (see DocumentRaster and ImageEncoder),
+ * or as vectors for SVG and PDF (see VectorExporter). The file is
+ * written to a temporary sibling and then renamed over the target, so a crash
+ * mid-save never leaves a half-written image. If saves of
+ * the same file are requested faster than they can be encoded, the newest
+ * request replaces any request for that file that has not started yet.
+ */
+public class ImageSaver {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "image-saver");
+        thread.setDaemon(true); // Do not keep the application alive
+        return thread;
+    });
+    private final ConcurrentHashMap<File, SaveJob> pending = new ConcurrentHashMap<>(); // Queued saves per file
+    private volatile long lastGrabNanos, lastEncodeNanos, lastWriteNanos, lastBytes;
+    private volatile int coalescedCount = 0;
+
+    /**
+     * Queues a captured document to be written to a file. Must be called on
+     * the JavaFX thread.
+     *
+     * @param raster  The document, captured on the JavaFX thread.
+     * @param file    The file to write.
+     * @param encoder The format settings to encode with.
+     * @param onDone  Called on the JavaFX thread with null on success or the failure, may be null.
+     */
+    public void save(DocumentRaster raster, File file, ImageEncoder encoder, Consumer<Exception> onDone) {
+        lastGrabNanos = raster.getCaptureNanos();
+
+        SaveJob[] replaced = new SaveJob[1];
+        pending.compute(file, (key, old) -> {
+            replaced[0] = old;
+            Consumer<Exception> callbacks = onDone;
+            if (old != null && old.onDone != null) {
+                callbacks = onDone == null ? old.onDone : old.onDone.andThen(onDone); // Tell both callers
+            }
+            return new SaveJob(raster, file, encoder, callbacks);
+        });
+        if (replaced[0] != null) {
+            // The older request never started, so only the newest capture gets written
+            coalescedCount++;
+        } else {
+            executor.execute(() -> runPending(file));
+        }
+    }
+
+    public long getLastGrabMillis() {
+        return lastGrabNanos / 1_000_000;
+    }
+
+    public long getLastEncodeMillis() {
+        return lastEncodeNanos / 1_000_000;
+    }
+
+    public long getLastWriteMillis() {
+        return lastWriteNanos / 1_000_000;
+    }
+
+    public long getLastBytes() {
+        return lastBytes;
+    }
+
+    public int getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    private void runPending(File file) {
+        SaveJob job = pending.remove(file);
+        if (job == null) {
+            return; // Already handled by an earlier run
+        }
+        Exception failure = null;
+        try {
+            write(job);
+        } catch (IOException e) {
+            failure = e;
+            e.printStackTrace();
+        }
+        if (job.onDone != null) {
+            Exception result = failure;
+            Platform.runLater(() -> job.onDone.accept(result));
+        }
+    }
+
+    private void write(SaveJob job) throws IOException {
+        EditorEvents.Save event = new EditorEvents.Save();
+        event.begin();
+        long start = System.nanoTime();
+        String format = ImageEncoder.formatOf(job.file);
+        Path target = job.file.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), "." + job.file.getName(), ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+                if (VectorExporter.supports(format)) {
+                    VectorExporter.export(job.raster, format, job.encoder, out);
+                } else {
+                    job.encoder.encode(job.raster, job.raster.getWidth(), job.raster.getHeight(), format, out);
+                }
+            }
+            long encoded = System.nanoTime();
+            lastEncodeNanos = encoded - start;
+            lastBytes = Files.size(temp);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            lastWriteNanos = System.nanoTime() - encoded;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        PerfStats.global().recordSave(lastEncodeNanos, lastBytes);
+        event.file = job.file.getPath();
+        event.bytes = lastBytes;
+        event.grabNanos = lastGrabNanos;
+        event.encodeNanos = lastEncodeNanos;
+        event.commit();
+    }
+
+    /**
+     * Wraps ARGB pixels in a BufferedImage without copying them.
+     */
+    static BufferedImage wrap(int[] pixels, int width, int height) {
+        return wrap(pixels, 0, width, height);
+    }
+
+    /**
+     * Wraps ARGB pixels that start at an offset into an array, e.g. a band
+     * of a larger image, without copying them.
+     */
+    static BufferedImage wrap(int[] pixels, int offset, int width, int height) {
+        DirectColorModel colorModel = new DirectColorModel(32, 0x00ff0000, 0x0000ff00, 0x000000ff, 0xff000000);
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, width * height, offset), width, height,
+                width, colorModel.getMasks(), null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private static class SaveJob {
+        final DocumentRaster raster;
+        final File file;
+        final ImageEncoder encoder;
+        final Consumer<Exception> onDone;
+
+        SaveJob(DocumentRaster raster, File file, ImageEncoder encoder, Consumer<Exception> onDone) {
+            this.raster = raster;
+            this.file = file;
+            this.encoder = encoder;
+            this.onDone = onDone;
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * Rotates or flips an image together with the shapes drawn on it. Quarter
+ * turns are blocked transposes: the source is copied in square blocks so the
+ * scattered writes of a transpose stay within a few cache lines, and the
+ * bands of blocks run in parallel through PixelFilter's fork-join bands. Any
+ * other angle is resampled bilinearly into a destination buffer allocated
+ * once at its final size.
+ */
+public class ImageTransform {
+    public static final byte ROTATE_90 = 1; // Clockwise
+    public static final byte ROTATE_180 = 2;
+    public static final byte ROTATE_270 = 3; // Clockwise, i.e. a quarter turn counter-clockwise
+    public static final byte FLIP_HORIZONTAL = 4; // Mirror left to right
+    public static final byte FLIP_VERTICAL = 5; // Mirror top to bottom
+    public static final byte ROTATE = 6; // Clockwise by any angle in degrees, grows the image to fit
+
+    private static final int BLOCK = 64; // Columns per transpose block; bands supply at most as many rows
+
+    private final byte kind;
+    private final double degrees;
+    private final double cos, sin; // Of the angle, used by ROTATE
+
+    public ImageTransform(byte kind, double degrees) {
+        this.kind = kind;
+        this.degrees = degrees;
+        this.cos = Math.cos(Math.toRadians(degrees));
+        this.sin = Math.sin(Math.toRadians(degrees));
+    }
+
+    public static ImageTransform flipHorizontal() {
+        return new ImageTransform(FLIP_HORIZONTAL, 0);
+    }
+
+    public static ImageTransform flipVertical() {
+        return new ImageTransform(FLIP_VERTICAL, 0);
+    }
+
+    /**
+     * Creates a clockwise rotation. Multiples of 90 degrees become exact
+     * quarter turns instead of being resampled.
+     *
+     * @param degrees The angle, clockwise. Negative angles turn counter-clockwise.
+     * @return The rotation.
+     */
+    public static ImageTransform rotate(double degrees) {
+        double normalized = ((degrees % 360) + 360) % 360;
+        if (normalized == 90) {
+            return new ImageTransform(ROTATE_90, 90);
+        } else if (normalized == 180) {
+            return new ImageTransform(ROTATE_180, 180);
+        } else if (normalized == 270) {
+            return new ImageTransform(ROTATE_270, 270);
+        }
+        return new ImageTransform(ROTATE, normalized);
+    }
+
+    public byte getKind() {
+        return kind;
+    }
+
+    public double getDegrees() {
+        return degrees;
+    }
+
+    public int targetWidth(int width, int height) {
+        switch (kind) {
+            case ROTATE_90:
+            case ROTATE_270:
+                return height;
+            case ROTATE:
+                return (int) Math.ceil(Math.abs(width * cos) + Math.abs(height * sin) - 1e-9);
+            default:
+                return width;
+        }
+    }
+
+    public int targetHeight(int width, int height) {
+        switch (kind) {
+            case ROTATE_90:
+            case ROTATE_270:
+                return width;
+            case ROTATE:
+                return (int) Math.ceil(Math.abs(width * sin) + Math.abs(height * cos) - 1e-9);
+            default:
+                return height;
+        }
+    }
+
+    /**
+     * Maps a point of the source image to where it ends up in the result.
+     *
+     * @param x      The x-coordinate in the source.
+     * @param y      The y-coordinate in the source.
+     * @param width  The width of the source.
+     * @param height The height of the source.
+     * @param out    Receives the x- and y-coordinate in the result.
+     */
+    public void mapPoint(double x, double y, int width, int height, double[] out) {
+        switch (kind) {
+            case ROTATE_90:
+                out[0] = height - y;
+                out[1] = x;
+                break;
+            case ROTATE_180:
+                out[0] = width - x;
+                out[1] = height - y;
+                break;
+            case ROTATE_270:
+                out[0] = y;
+                out[1] = width - x;
+                break;
+            case FLIP_HORIZONTAL:
+                out[0] = width - x;
+                out[1] = y;
+                break;
+            case FLIP_VERTICAL:
+                out[0] = x;
+                out[1] = height - y;
+                break;
+            default: { // Rotate about the centre, then centre in the grown result
+                double dx = x - width / 2.0;
+                double dy = y - height / 2.0;
+                out[0] = cos * dx - sin * dy + targetWidth(width, height) / 2.0;
+                out[1] = sin * dx + cos * dy + targetHeight(width, height) / 2.0;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Transforms an image into a new one. The source image is not changed.
+     *
+     * @param image The image to transform.
+     * @return The transformed copy.
+     */
+    public WritableImage apply(Image image) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        int[] pixels = new int[width * height];
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        int targetWidth = targetWidth(width, height);
+        int targetHeight = targetHeight(width, height);
+        int[] target = new int[targetWidth * targetHeight];
+        apply(pixels, width, height, target);
+
+        WritableImage result = new WritableImage(targetWidth, targetHeight);
+        result.getPixelWriter().setPixels(0, 0, targetWidth, targetHeight, PixelFormat.getIntArgbInstance(), target, 0,
+                targetWidth);
+        return result;
+    }
+
+    /**
+     * Transforms ARGB pixels into a preallocated buffer.
+     *
+     * @param source The source pixels, row by row.
+     * @param width  The width of the source.
+     * @param height The height of the source.
+     * @param target Receives the result; must hold targetWidth * targetHeight pixels.
+     */
+    public void apply(int[] source, int width, int height, int[] target) {
+        switch (kind) {
+            case ROTATE_90:
+            case ROTATE_270:
+                PixelFilter.inBands(height, (from, to) -> transpose(source, width, height, target, from, to));
+                break;
+            case ROTATE_180:
+                PixelFilter.inBands(height, (from, to) -> {
+                    for (int y = from; y < to; y++) {
+                        int row = y * width;
+                        int mirrored = (height - 1 - y) * width + width - 1;
+                        for (int x = 0; x < width; x++) {
+                            target[mirrored - x] = source[row + x];
+                        }
+                    }
+                });
+                break;
+            case FLIP_HORIZONTAL:
+                PixelFilter.inBands(height, (from, to) -> {
+                    for (int y = from; y < to; y++) {
+                        int row = y * width;
+                        for (int x = 0; x < width; x++) {
+                            target[row + width - 1 - x] = source[row + x];
+                        }
+                    }
+                });
+                break;
+            case FLIP_VERTICAL:
+                PixelFilter.inBands(height, (from, to) -> {
+                    for (int y = from; y < to; y++) {
+                        System.arraycopy(source, y * width, target, (height - 1 - y) * width, width);
+                    }
+                });
+                break;
+            default: {
+                int targetWidth = targetWidth(width, height);
+                PixelFilter.inBands(targetHeight(width, height),
+                        (from, to) -> resample(source, width, height, target, targetWidth, from, to));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Turns source rows from..to a quarter turn, one BLOCK-wide block at a
+     * time. Within a block the reads run along source rows and the writes go
+     * to at most BLOCK target rows, so both sides stay in cache.
+     */
+    private void transpose(int[] source, int width, int height, int[] target, int from, int to) {
+        boolean clockwise = kind == ROTATE_90;
+        for (int blockX = 0; blockX < width; blockX += BLOCK) {
+            int blockEnd = Math.min(width, blockX + BLOCK);
+            for (int y = from; y < to; y++) {
+                int row = y * width;
+                for (int x = blockX; x < blockEnd; x++) {
+                    // Clockwise, (x, y) goes to (height - 1 - y, x); counter-clockwise to (y, width - 1 - x)
+                    int index = clockwise ? x * height + height - 1 - y : (width - 1 - x) * height + y;
+                    target[index] = source[row + x];
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills target rows from..to by stepping each row's sample position
+     * through the source with the inverse rotation and interpolating the four
+     * nearest pixels. Colours are weighted by alpha, so the transparent border
+     * does not darken the edges.
+     */
+    private void resample(int[] source, int width, int height, int[] target, int targetWidth, int from, int to) {
+        double centerX = width / 2.0, centerY = height / 2.0;
+        double targetCenterX = targetWidth / 2.0, targetCenterY = targetHeight(width, height) / 2.0;
+        for (int y = from; y < to; y++) {
+            double dx = 0.5 - targetCenterX;
+            double dy = y + 0.5 - targetCenterY;
+            // Source position of the first pixel centre of the row, in pixel-centre coordinates
+            double sourceX = cos * dx + sin * dy + centerX - 0.5;
+            double sourceY = -sin * dx + cos * dy + centerY - 0.5;
+            int row = y * targetWidth;
+            for (int x = 0; x < targetWidth; x++, sourceX += cos, sourceY -= sin) {
+                target[row + x] = sample(source, width, height, sourceX, sourceY);
+            }
+        }
+    }
+
+    private static int sample(int[] source, int width, int height, double x, double y) {
+        int x0 = (int) Math.floor(x);
+        int y0 = (int) Math.floor(y);
+        if (x0 < -1 || y0 < -1 || x0 >= width || y0 >= height) {
+            return 0; // Entirely outside the source
+        }
+        double fx = x - x0;
+        double fy = y - y0;
+        int topLeft = pixel(source, width, height, x0, y0);
+        int topRight = pixel(source, width, height, x0 + 1, y0);
+        int bottomLeft = pixel(source, width, height, x0, y0 + 1);
+        int bottomRight = pixel(source, width, height, x0 + 1, y0 + 1);
+        double w00 = (1 - fx) * (1 - fy) * (topLeft >>> 24);
+        double w10 = fx * (1 - fy) * (topRight >>> 24);
+        double w01 = (1 - fx) * fy * (bottomLeft >>> 24);
+        double w11 = fx * fy * (bottomRight >>> 24);
+        double alpha = w00 + w10 + w01 + w11;
+        if (alpha <= 0) {
+            return 0;
+        }
+        int r = (int) Math.round((w00 * ((topLeft >> 16) & 0xff) + w10 * ((topRight >> 16) & 0xff)
+                + w01 * ((bottomLeft >> 16) & 0xff) + w11 * ((bottomRight >> 16) & 0xff)) / alpha);
+        int g = (int) Math.round((w00 * ((topLeft >> 8) & 0xff) + w10 * ((topRight >> 8) & 0xff)
+                + w01 * ((bottomLeft >> 8) & 0xff) + w11 * ((bottomRight >> 8) & 0xff)) / alpha);
+        int b = (int) Math.round((w00 * (topLeft & 0xff) + w10 * (topRight & 0xff)
+                + w01 * (bottomLeft & 0xff) + w11 * (bottomRight & 0xff)) / alpha);
+        return ((int) Math.round(alpha) << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int pixel(int[] source, int width, int height, int x, int y) {
+        return x < 0 || y < 0 || x >= width || y >= height ? 0 : source[y * width + x];
+    }
+
+    /**
+     * Transforms shapes to match the transformed image. Ids are kept, so the
+     * selection stays on the same shape. A shape whose kind cannot express the
+     * result, such as a triangle on its side or a rotated rectangle, becomes a
+     * pen stroke along its outline. Fills stay fills; at angles other than
+     * quarter turns their region is resampled.
+     *
+     * @param shapes The shapes drawn on the source image.
+     * @param width  The width of the source image.
+     * @param height The height of the source image.
+     * @return A new store with the transformed shapes.
+     */
+    public ShapeStore apply(ShapeStore shapes, int width, int height) {
+        ShapeStore result = new ShapeStore(shapes.size());
+        double[] start = new double[2];
+        double[] end = new double[2];
+        double[] xs = new double[256];
+        double[] ys = new double[256];
+        for (int id = 0, n = shapes.size(); id < n; id++) {
+            byte kind = shapes.getKind(id);
+            Color color = shapes.getColor(id);
+            double lineWidth = shapes.getWidth(id);
+            double startX = shapes.getStartX(id), startY = shapes.getStartY(id);
+            double endX = shapes.getEndX(id), endY = shapes.getEndY(id);
+
+            if (kind == ShapeStore.PEN) {
+                int count = shapes.getPointCount(id);
+                if (count > xs.length) {
+                    xs = new double[count];
+                    ys = new double[count];
+                }
+                shapes.copyPoints(id, xs, ys);
+                PenStroke stroke = new PenStroke(count);
+                for (int i = 0; i < count; i++) {
+                    mapPoint(xs[i], ys[i], width, height, start);
+                    stroke.add(start[0], start[1]);
+                }
+                result.addStroke(stroke, color, lineWidth);
+            } else if (kind == ShapeStore.FILL) {
+                int count = shapes.getPointCount(id);
+                if (count > xs.length) {
+                    xs = new double[count];
+                    ys = new double[count];
+                }
+                shapes.copyPoints(id, xs, ys);
+                result.addFill(this.kind == ROTATE ? resampleFill(xs, ys, count, width, height) : mapFill(xs, ys, count, width, height),
+                        color);
+            } else if (keepsKind(kind)) {
+                if (kind == ShapeStore.SQUARE) {
+                    endY = startY + (endX - startX); // Squares only store the horizontal side
+                }
+                mapPoint(startX, startY, width, height, start);
+                mapPoint(endX, endY, width, height, end);
+                if (kind == ShapeStore.SQUARE) {
+                    double sideX = end[0] - start[0];
+                    double sideY = end[1] - start[1];
+                    if (Math.signum(sideX) != Math.signum(sideY)) {
+                        // The diagonal now runs the other way, so start from the other corner of it
+                        start[0] += sideX;
+                    }
+                    end[0] = start[0] + sideY;
+                    end[1] = start[1] + sideY;
+                }
+                result.add(kind, start[0], start[1], end[0], end[1], color, lineWidth);
+            } else {
+                PenStroke outline = ShapeGeometry.outline(kind, startX, startY, endX, endY);
+                PenStroke stroke = new PenStroke(outline.size());
+                for (int i = 0; i < outline.size(); i++) {
+                    mapPoint(outline.getX(i), outline.getY(i), width, height, start);
+                    stroke.add(start[0], start[1]);
+                }
+                result.addStroke(stroke, color, lineWidth);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Maps the rectangles of a fill through a quarter turn or flip, which
+     * keeps every rectangle axis-aligned.
+     */
+    private int[] mapFill(double[] xs, double[] ys, int count, int width, int height) {
+        int[] rects = new int[count * 2];
+        double[] corner = new double[2];
+        for (int i = 0; i + 1 < count; i += 2) {
+            mapPoint(xs[i], ys[i], width, height, corner);
+            double x0 = corner[0], y0 = corner[1];
+            mapPoint(xs[i + 1], ys[i + 1], width, height, corner);
+            rects[i * 2] = (int) Math.round(Math.min(x0, corner[0]));
+            rects[i * 2 + 1] = (int) Math.round(Math.min(y0, corner[1]));
+            rects[i * 2 + 2] = (int) Math.round(Math.max(x0, corner[0]));
+            rects[i * 2 + 3] = (int) Math.round(Math.max(y0, corner[1]));
+        }
+        return rects;
+    }
+
+    /**
+     * Rasterizes a fill at an arbitrary angle: the region is drawn into a
+     * bit mask, and every target pixel within the rotated bounds whose centre
+     * maps back into the mask joins the new region.
+     */
+    private int[] resampleFill(double[] xs, double[] ys, int count, int width, int height) {
+        if (count < 2) {
+            return new int[0];
+        }
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i + 1 < count; i += 2) {
+            minX = Math.min(minX, (int) xs[i]);
+            minY = Math.min(minY, (int) ys[i]);
+            maxX = Math.max(maxX, (int) xs[i + 1]);
+            maxY = Math.max(maxY, (int) ys[i + 1]);
+        }
+        int maskWidth = maxX - minX;
+        int maskHeight = maxY - minY;
+        long[] mask = new long[(maskWidth * maskHeight + 63) >>> 6];
+        for (int i = 0; i + 1 < count; i += 2) {
+            for (int y = (int) ys[i]; y < (int) ys[i + 1]; y++) {
+                for (int x = (int) xs[i]; x < (int) xs[i + 1]; x++) {
+                    int bit = (y - minY) * maskWidth + x - minX;
+                    mask[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+
+        // Bounds of the rotated region in the target
+        double targetMinX = Double.MAX_VALUE, targetMinY = Double.MAX_VALUE;
+        double targetMaxX = -Double.MAX_VALUE, targetMaxY = -Double.MAX_VALUE;
+        double[] corner = new double[2];
+        for (int i = 0; i < 4; i++) {
+            mapPoint(i % 2 == 0 ? minX : maxX, i < 2 ? minY : maxY, width, height, corner);
+            targetMinX = Math.min(targetMinX, corner[0]);
+            targetMinY = Math.min(targetMinY, corner[1]);
+            targetMaxX = Math.max(targetMaxX, corner[0]);
+            targetMaxY = Math.max(targetMaxY, corner[1]);
+        }
+
+        double centerX = width / 2.0, centerY = height / 2.0;
+        double targetCenterX = targetWidth(width, height) / 2.0, targetCenterY = targetHeight(width, height) / 2.0;
+        FloodFill.SpanList spans = new FloodFill.SpanList();
+        for (int y = Math.max(0, (int) Math.floor(targetMinY)); y < (int) Math.ceil(targetMaxY); y++) {
+            int runStart = -1;
+            int endX = (int) Math.ceil(targetMaxX);
+            for (int x = Math.max(0, (int) Math.floor(targetMinX)); x <= endX; x++) {
+                boolean inside = false;
+                if (x < endX) {
+                    double dx = x + 0.5 - targetCenterX;
+                    double dy = y + 0.5 - targetCenterY;
+                    int sourceX = (int) Math.floor(cos * dx + sin * dy + centerX) - minX;
+                    int sourceY = (int) Math.floor(-sin * dx + cos * dy + centerY) - minY;
+                    if (sourceX >= 0 && sourceY >= 0 && sourceX < maskWidth && sourceY < maskHeight) {
+                        int bit = sourceY * maskWidth + sourceX;
+                        inside = (mask[bit >>> 6] & (1L << bit)) != 0;
+                    }
+                }
+                if (inside && runStart < 0) {
+                    runStart = x;
+                } else if (!inside && runStart >= 0) {
+                    spans.add(runStart, x, y);
+                    runStart = -1;
+                }
+            }
+        }
+        return spans.toRects();
+    }
+
+    /**
+     * Tells whether a shape kind can express its own transformed geometry.
+     * Boxes, ellipses and octagons are symmetric under quarter turns and
+     * flips; triangles always point up or down, so they survive flips only.
+     * Circles survive any rotation.
+     */
+    private boolean keepsKind(byte kind) {
+        if (kind == ShapeStore.CIRCLE) {
+            return true;
+        }
+        switch (this.kind) {
+            case ROTATE:
+                return false;
+            case ROTATE_90:
+            case ROTATE_270:
+                return kind != ShapeStore.TRIANGLE;
+            default:
+                return true;
+        }
+    }}
@@ -0,0 +1,133 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.paint.Color;
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Renderer backed by a Java2D Graphics2D, for drawing documents off-screen.
+ * It needs neither a display nor the JavaFX thread, so separate instances can
+ * render on as many threads as needed. Strokes follow the JavaFX defaults
+ * (square caps, miter joins) so both backends produce the same picture.
+ */
+public class Java2DRenderer implements Renderer {
+    private final Graphics2D g;
+    private double lineWidth = 1;
+    private BasicStroke shapeStroke, penStroke; // Rebuilt only when the width changes
+    private Color lastColor;
+    private final Rectangle2D.Double rect = new Rectangle2D.Double(); // Reused for every shape
+    private final Ellipse2D.Double oval = new Ellipse2D.Double();
+    private final Path2D.Double path = new Path2D.Double();
+
+    public Java2DRenderer(Graphics2D g) {
+        this.g = g;
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON); // JavaFX anti-aliases strokes
+        g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        setLineWidth(1);
+    }
+
+    /**
+     * Draws a document into a new image without JavaFX.
+     *
+     * @param shapes     The shapes to draw; must not change while rendering.
+     * @param background The background image drawn first, may be null.
+     * @param width      The width of the result.
+     * @param height     The height of the result.
+     * @return The rendered ARGB image.
+     */
+    public static BufferedImage render(ShapeStore shapes, BufferedImage background, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        renderInto(image, shapes, background);
+        return image;
+    }
+
+    /**
+     * Draws a document into an existing image, e.g. one whose pixel type suits
+     * the format it will be encoded to.
+     *
+     * @param target     The image to draw into.
+     * @param shapes     The shapes to draw; must not change while rendering.
+     * @param background The background image drawn first, may be null.
+     */
+    public static void renderInto(BufferedImage target, ShapeStore shapes, BufferedImage background) {
+        Graphics2D g = target.createGraphics();
+        try {
+            if (background != null) {
+                g.drawImage(background, 0, 0, null);
+            }
+            new ShapeRenderer(new Java2DRenderer(g)).drawShapes(shapes);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    @Override
+    public void setStroke(Color color) {
+        if (color != lastColor) {
+            lastColor = color;
+            g.setColor(new java.awt.Color((float) color.getRed(), (float) color.getGreen(), (float) color.getBlue(),
+                    (float) color.getOpacity()));
+        }
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        if (width != lineWidth || shapeStroke == null) {
+            lineWidth = width;
+            shapeStroke = new BasicStroke((float) width, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER, 10);
+            penStroke = new BasicStroke((float) width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        }
+    }
+
+    @Override
+    public void strokeRect(double x, double y, double width, double height) {
+        rect.setRect(x, y, width, height);
+        g.setStroke(shapeStroke);
+        g.draw(rect);
+    }
+
+    @Override
+    public void strokeOval(double x, double y, double width, double height) {
+        oval.setFrame(x, y, width, height);
+        g.setStroke(shapeStroke);
+        g.draw(oval);
+    }
+
+    @Override
+    public void strokePolygon(double[] xPoints, double[] yPoints, int count) {
+        tracePath(xPoints, yPoints, count);
+        path.closePath();
+        g.setStroke(shapeStroke);
+        g.draw(path);
+    }
+
+    @Override
+    public void strokePolyline(double[] xPoints, double[] yPoints, int count) {
+        tracePath(xPoints, yPoints, count);
+        g.setStroke(penStroke);
+        g.draw(path);
+    }
+
+    @Override
+    public void fillRects(double[] xPoints, double[] yPoints, int count) {
+        for (int i = 0; i + 1 < count; i += 2) {
+            rect.setRect(xPoints[i], yPoints[i], xPoints[i + 1] - xPoints[i], yPoints[i + 1] - yPoints[i]);
+            g.fill(rect);
+        }
+    }
+
+    private void tracePath(double[] xPoints, double[] yPoints, int count) {
+        path.reset();
+        if (count > 0) {
+            path.moveTo(xPoints[0], yPoints[0]);
+            for (int i = 1; i < count; i++) {
+                path.lineTo(xPoints[i], yPoints[i]);
+            }
+        }
+    }
+}
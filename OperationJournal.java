@@ -0,0 +1,362 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Append-only binary log of the edits made since an image was last saved.
+ * Each record is framed as [length][payload][CRC-32 of payload], so a record
+ * torn by a crash is detected and cut off when the journal is reopened.
+ * Records are written as they happen but only forced to disk every
+ * SYNC_BATCH records or when sync() is called, which keeps fsync cost down.
+ *
+ * Undo and redo are logged as such while a replay of the journal can repeat
+ * them. An undo back past the start of the journal, e.g. of an edit already
+ * in the saved file, is logged as a state record holding the whole document
+ * instead, shapes and background, which replay puts in place as it is.
+ */
+public class OperationJournal implements Closeable {
+    private static final int MAGIC = 0x4A504A4C; // "JPJL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int SYNC_BATCH = 32; // Records written between forced syncs
+
+    private static final byte RECORD_EDIT = 'E';
+    private static final byte RECORD_UNDO = 'U';
+    private static final byte RECORD_REDO = 'R';
+    private static final byte RECORD_STATE = 'S';
+
+    private static final byte BACKGROUND_NONE = 0;
+    private static final byte BACKGROUND_FILE = 1; // A tiled image, by the URI of its unchanged file
+    private static final byte BACKGROUND_PIXELS = 2; // Width, height, then ARGB ints
+
+    private final FileChannel channel;
+    private final File file;
+    private int unsyncedRecords = 0;
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(); // Reused per record
+    private final CRC32 crc = new CRC32();
+
+    private OperationJournal(File file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Returns the journal location used for an image file.
+     *
+     * @param imageFile The image being edited.
+     * @return The journal file next to it.
+     */
+    public static File journalFileFor(File imageFile) {
+        return new File(imageFile.getAbsoluteFile().getParentFile(), "." + imageFile.getName() + ".journal");
+    }
+
+    /**
+     * Opens or creates a journal. A torn or corrupt tail left by a crash is
+     * truncated so new records follow the last intact one.
+     *
+     * @param file The journal file.
+     * @return The open journal.
+     * @throws IOException If the file cannot be opened or is not a journal.
+     */
+    public static OperationJournal open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                writeHeader(channel);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(channel, header, 0);
+                header.flip();
+                if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                    throw new IOException(file + " is not a journal");
+                }
+                channel.truncate(findValidEnd(channel));
+            }
+            channel.position(channel.size());
+            return new OperationJournal(file, channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Tells whether the journal holds any records.
+     *
+     * @return true if there is something to recover.
+     */
+    public synchronized boolean hasRecords() throws IOException {
+        return channel.size() > HEADER_SIZE;
+    }
+
+    /**
+     * Returns the offset just past the last record, used with discardBefore.
+     *
+     * @return The current end of the journal.
+     */
+    public synchronized long mark() throws IOException {
+        return channel.size();
+    }
+
+    public synchronized void appendEdit(Edit edit) throws IOException {
+        recordBytes.reset();
+        DataOutputStream out = new DataOutputStream(recordBytes);
+        out.writeByte(RECORD_EDIT);
+        edit.write(out);
+        appendRecord();
+    }
+
+    public synchronized void appendUndo() throws IOException {
+        recordBytes.reset();
+        recordBytes.write(RECORD_UNDO);
+        appendRecord();
+    }
+
+    public synchronized void appendRedo() throws IOException {
+        recordBytes.reset();
+        recordBytes.write(RECORD_REDO);
+        appendRecord();
+    }
+
+    /**
+     * Logs the whole document, for an undo that a replay of the journal could
+     * not repeat. The record is deflated; a background image is embedded,
+     * unless it is a tiled image whose file still holds it.
+     *
+     * @param shapes The shapes after the undo.
+     * @param image  The background image after the undo, or null.
+     * @param tiles  The tiled background after the undo, or null.
+     */
+    public synchronized void appendState(ShapeStore shapes, Image image, TiledImage tiles) throws IOException {
+        recordBytes.reset();
+        recordBytes.write(RECORD_STATE);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED); // Undo waits for this, and pixels dominate
+        try {
+            DeflaterOutputStream deflated = new DeflaterOutputStream(recordBytes, deflater, 1 << 16);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(deflated, 1 << 16));
+            shapes.writeTo(out);
+            if (tiles != null && !tiles.isFileReplaced()) {
+                out.writeByte(BACKGROUND_FILE);
+                out.writeUTF(tiles.getFile().toURI().toString());
+            } else if (image != null || tiles != null) {
+                out.writeByte(BACKGROUND_PIXELS);
+                writePixels(out, image, tiles);
+            } else {
+                out.writeByte(BACKGROUND_NONE);
+            }
+            out.flush();
+            deflated.finish();
+        } finally {
+            deflater.end();
+        }
+        appendRecord();
+    }
+
+    /**
+     * Forces any records written since the last sync to disk.
+     */
+    public synchronized void sync() throws IOException {
+        if (unsyncedRecords > 0) {
+            channel.force(false);
+            unsyncedRecords = 0;
+        }
+    }
+
+    /**
+     * Drops every record before a mark, e.g. once an image holding those edits
+     * has been saved. Records written after the mark are kept.
+     *
+     * @param mark An offset returned by mark().
+     */
+    public synchronized void discardBefore(long mark) throws IOException {
+        long end = channel.size();
+        ByteBuffer tail = ByteBuffer.allocate((int) (end - mark));
+        readFully(channel, tail, mark);
+        tail.flip();
+        channel.truncate(HEADER_SIZE);
+        channel.position(HEADER_SIZE);
+        while (tail.hasRemaining()) {
+            channel.write(tail);
+        }
+        channel.force(false);
+        unsyncedRecords = 0;
+    }
+
+    /**
+     * Replays every record onto a drawing, in order.
+     *
+     * @param canvas The drawing to rebuild; it must not be journaling to this file.
+     */
+    public synchronized void replay(DrawingCanvas canvas) throws IOException {
+        ByteBuffer all = ByteBuffer.allocate((int) (channel.size() - HEADER_SIZE));
+        readFully(channel, all, HEADER_SIZE);
+        all.flip();
+        while (all.remaining() >= 4) {
+            byte[] payload = new byte[all.getInt()];
+            all.get(payload);
+            all.getInt(); // CRC, already checked when the journal was opened
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            byte type = in.readByte();
+            if (type == RECORD_EDIT) {
+                canvas.replayEdit(Edit.read(in));
+            } else if (type == RECORD_UNDO) {
+                canvas.undo();
+            } else if (type == RECORD_REDO) {
+                canvas.redo();
+            } else if (type == RECORD_STATE) {
+                replayState(canvas, new DataInputStream(new BufferedInputStream(new InflaterInputStream(
+                        new ByteArrayInputStream(payload, 1, payload.length - 1)), 1 << 16)));
+            }
+        }
+    }
+
+    private static void replayState(DrawingCanvas canvas, DataInputStream in) throws IOException {
+        canvas.getShapeStore().readFrom(in);
+        Image image = null;
+        TiledImage tiles = null;
+        byte background = in.readByte();
+        if (background == BACKGROUND_FILE) {
+            String uri = in.readUTF();
+            try {
+                tiles = TiledImage.open(new File(new URI(uri)));
+            } catch (URISyntaxException | IllegalArgumentException | IOException e) {
+                e.printStackTrace(); // Recover the shapes even if the background is gone
+            }
+        } else if (background == BACKGROUND_PIXELS) {
+            image = readPixels(in);
+        }
+        canvas.restoreJournaledState(image, tiles);
+    }
+
+    /**
+     * Writes a background's size and pixels a row at a time, so no copy of
+     * the whole image is made. Tiled images are composited over white.
+     */
+    private static void writePixels(DataOutputStream out, Image image, TiledImage tiles) throws IOException {
+        int width = image != null ? (int) image.getWidth() : tiles.getWidth();
+        int height = image != null ? (int) image.getHeight() : tiles.getHeight();
+        out.writeInt(width);
+        out.writeInt(height);
+        ImageEncoder.RowSource rows = image != null ? null
+                : DocumentRaster.capture(new ShapeStore(), null, tiles, width, height).background();
+        int[] row = new int[width];
+        ByteBuffer bytes = ByteBuffer.allocate(width * 4);
+        for (int y = 0; y < height; y++) {
+            if (image != null) {
+                image.getPixelReader().getPixels(0, y, width, 1, PixelFormat.getIntArgbInstance(), row, 0, width);
+            } else {
+                rows.readRows(y, 1, row, 0);
+            }
+            bytes.clear();
+            bytes.asIntBuffer().put(row);
+            out.write(bytes.array());
+        }
+    }
+
+    private static Image readPixels(DataInputStream in) throws IOException {
+        int width = in.readInt();
+        int height = in.readInt();
+        WritableImage image = new WritableImage(width, height);
+        int[] row = new int[width];
+        byte[] bytes = new byte[width * 4];
+        for (int y = 0; y < height; y++) {
+            in.readFully(bytes);
+            ByteBuffer.wrap(bytes).asIntBuffer().get(row);
+            image.getPixelWriter().setPixels(0, y, width, 1, PixelFormat.getIntArgbInstance(), row, 0, width);
+        }
+        return image;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    private void appendRecord() throws IOException {
+        byte[] payload = recordBytes.toByteArray();
+        crc.reset();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(payload.length + 8);
+        record.putInt(payload.length).put(payload).putInt((int) crc.getValue()).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        if (++unsyncedRecords >= SYNC_BATCH) {
+            sync();
+        }
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        channel.truncate(0);
+        channel.write(header, 0);
+        channel.force(false);
+    }
+
+    private static long findValidEnd(FileChannel channel) throws IOException {
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        CRC32 check = new CRC32();
+        while (position + 8 <= size) {
+            lengthBuffer.clear();
+            readFully(channel, lengthBuffer, position);
+            lengthBuffer.flip();
+            int length = lengthBuffer.getInt();
+            if (length <= 0 || position + 8 + length > size) {
+                break; // Torn record at the end
+            }
+            ByteBuffer record = ByteBuffer.allocate(length + 4);
+            readFully(channel, record, position + 4);
+            record.flip();
+            check.reset();
+            check.update(record.array(), 0, length);
+            if (record.getInt(length) != (int) check.getValue()) {
+                break; // Corrupt record, nothing after it can be trusted
+            }
+            position += 8 + length;
+        }
+        return position;
+    }
+
+    /**
+     * Reads until the buffer is full, as a single read may return less.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new EOFException("The journal ended early");
+            }
+            position += count;
+        }
+    }
+}
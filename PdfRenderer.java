@@ -0,0 +1,193 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.paint.Color;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Renderer that writes PDF content stream operators as shapes are drawn. The
+ * stream is in document coordinates; VectorExporter sets up the transform
+ * that flips them onto the page. Caps, joins, color and width are only
+ * written when they change. Translucent colors use graphics states named by
+ * getAlphaStates, which the page's resources must declare. Write failures are
+ * thrown as UncheckedIOException.
+ */
+public class PdfRenderer implements Renderer {
+    private static final double KAPPA = 0.5522847498; // Bezier handle length of a quarter circle
+
+    private final Writer out;
+    private Color color;
+    private double lineWidth = 1;
+    private boolean isColorStale = true, isWidthStale = true;
+    private int style = -1; // 0 for shape outlines, 1 for pen strokes
+    private final Map<Double, String> alphaStates = new LinkedHashMap<>();
+
+    public PdfRenderer(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Names the graphics states used for translucent colors, by alpha.
+     */
+    public Map<Double, String> getAlphaStates() {
+        return alphaStates;
+    }
+
+    @Override
+    public void setStroke(Color color) {
+        if (!color.equals(this.color)) {
+            this.color = color;
+            isColorStale = true;
+        }
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        if (width != lineWidth) {
+            lineWidth = width;
+            isWidthStale = true;
+        }
+    }
+
+    @Override
+    public void strokeRect(double x, double y, double width, double height) {
+        if (width < 0 || height < 0) {
+            return; // Java2D draws nothing for these either
+        }
+        try {
+            startShape(0);
+            writePoint(x, y);
+            writePoint(width, height);
+            out.write("re S\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void strokeOval(double x, double y, double width, double height) {
+        if (width < 0 || height < 0) {
+            return;
+        }
+        double radiusX = width / 2, radiusY = height / 2;
+        double centerX = x + radiusX, centerY = y + radiusY;
+        double handleX = radiusX * KAPPA, handleY = radiusY * KAPPA;
+        double right = x + width, bottom = y + height;
+        try {
+            startShape(0);
+            writePoint(right, centerY);
+            out.write("m\n");
+            writeCurve(right, centerY + handleY, centerX + handleX, bottom, centerX, bottom);
+            writeCurve(centerX - handleX, bottom, x, centerY + handleY, x, centerY);
+            writeCurve(x, centerY - handleY, centerX - handleX, y, centerX, y);
+            writeCurve(centerX + handleX, y, right, centerY - handleY, right, centerY);
+            out.write("s\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void strokePolygon(double[] xPoints, double[] yPoints, int count) {
+        writePath(0, xPoints, yPoints, count, "s\n");
+    }
+
+    @Override
+    public void strokePolyline(double[] xPoints, double[] yPoints, int count) {
+        writePath(1, xPoints, yPoints, count, "S\n");
+    }
+
+    @Override
+    public void fillRects(double[] xPoints, double[] yPoints, int count) {
+        if (count < 2) {
+            return;
+        }
+        try {
+            startShape(style < 0 ? 0 : style); // Fills ignore caps and joins
+            for (int i = 0; i + 1 < count; i += 2) {
+                writePoint(xPoints[i], yPoints[i]);
+                writePoint(xPoints[i + 1] - xPoints[i], yPoints[i + 1] - yPoints[i]);
+                out.write("re\n");
+            }
+            out.write("f\n"); // One fill for all rectangles, so viewers leave no seams between them
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writePath(int pathStyle, double[] xPoints, double[] yPoints, int count, String end) {
+        if (count == 0) {
+            return;
+        }
+        try {
+            startShape(pathStyle);
+            writePoint(xPoints[0], yPoints[0]);
+            out.write("m\n");
+            for (int i = 1; i < count; i++) {
+                writePoint(xPoints[i], yPoints[i]);
+                out.write("l\n");
+            }
+            out.write(end);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes whatever state changed since the last shape.
+     *
+     * @param shapeStyle 0 for square caps and miter joins as JavaFX strokes shapes, 1 for round pen strokes.
+     */
+    private void startShape(int shapeStyle) throws IOException {
+        if (isColorStale) {
+            writeColor();
+            out.write("RG ");
+            writeColor();
+            out.write("rg\n");
+            double alpha = color.getOpacity();
+            if (alpha < 1 || !alphaStates.isEmpty()) {
+                // Once any state is in use, opaque colors need one too, to undo it
+                String name = alphaStates.computeIfAbsent(alpha, key -> "a" + alphaStates.size());
+                out.write('/');
+                out.write(name);
+                out.write(" gs\n");
+            }
+            isColorStale = false;
+        }
+        if (isWidthStale) {
+            VectorExporter.writeNumber(out, lineWidth);
+            out.write(" w\n");
+            isWidthStale = false;
+        }
+        if (shapeStyle != style) {
+            out.write(shapeStyle == 0 ? "2 J 0 j 10 M\n" : "1 J 1 j\n");
+            style = shapeStyle;
+        }
+    }
+
+    private void writeColor() throws IOException {
+        VectorExporter.writeNumber(out, color.getRed(), 3);
+        out.write(' ');
+        VectorExporter.writeNumber(out, color.getGreen(), 3);
+        out.write(' ');
+        VectorExporter.writeNumber(out, color.getBlue(), 3);
+        out.write(' ');
+    }
+
+    private void writeCurve(double x1, double y1, double x2, double y2, double x3, double y3) throws IOException {
+        writePoint(x1, y1);
+        writePoint(x2, y2);
+        writePoint(x3, y3);
+        out.write("c\n");
+    }
+
+    private void writePoint(double x, double y) throws IOException {
+        VectorExporter.writeNumber(out, x);
+        out.write(' ');
+        VectorExporter.writeNumber(out, y);
+        out.write(' ');
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.imageeditorjaden;
+
+import java.util.Arrays;
+
+/**
+ * A freehand pen stroke stored as growable primitive coordinate buffers, so a
+ * long stroke costs two arrays rather than one object per point.
+ */
+public class PenStroke {
+    private double[] xs;
+    private double[] ys;
+    private int size;
+    private double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+    public PenStroke() {
+        this(64);
+    }
+
+    public PenStroke(int capacity) {
+        xs = new double[Math.max(capacity, 2)];
+        ys = new double[Math.max(capacity, 2)];
+    }
+
+    /**
+     * Appends a point to the end of the stroke.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     */
+    public void add(double x, double y) {
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getX(int i) {
+        return xs[i];
+    }
+
+    public double getY(int i) {
+        return ys[i];
+    }
+
+    /**
+     * Returns the x buffer. Only the first size() entries are valid.
+     *
+     * @return The backing array of x-coordinates.
+     */
+    public double[] getXs() {
+        return xs;
+    }
+
+    /**
+     * Returns the y buffer. Only the first size() entries are valid.
+     *
+     * @return The backing array of y-coordinates.
+     */
+    public double[] getYs() {
+        return ys;
+    }
+
+    /**
+     * Writes the stroke's bounds into the given array.
+     *
+     * @param out Receives minX, minY, maxX, maxY.
+     */
+    public void bounds(double[] out) {
+        out[0] = minX;
+        out[1] = minY;
+        out[2] = maxX;
+        out[3] = maxY;
+    }
+
+    /**
+     * Simplifies the stroke with the Ramer-Douglas-Peucker algorithm, dropping
+     * points that lie within the given distance of the simplified line. An
+     * explicit stack is used so very long strokes cannot overflow the call stack.
+     *
+     * @param tolerance The largest allowed deviation in pixels.
+     * @return A new, simplified stroke.
+     */
+    public PenStroke simplify(double tolerance) {
+        if (size <= 2) {
+            PenStroke copy = new PenStroke(size);
+            for (int i = 0; i < size; i++) {
+                copy.add(xs[i], ys[i]);
+            }
+            return copy;
+        }
+
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size - 1;
+        double toleranceSq = tolerance * tolerance;
+        int kept = 2;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            double farthestDistSq = toleranceSq;
+            for (int i = first + 1; i < last; i++) {
+                double distSq = ShapeGeometry.segmentDistanceSq(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (distSq > farthestDistSq) {
+                    farthestDistSq = distSq;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                kept++;
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        PenStroke simplified = new PenStroke(kept);
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                simplified.add(xs[i], ys[i]);
+            }
+        }
+        return simplified;
+    }
+}
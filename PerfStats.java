@@ -0,0 +1,110 @@
+package com.example.imageeditorjaden;
+
+/**
+ * Running latency histograms and counters for the editor's hot paths, shown by
+ * the on-canvas HUD. The same calls are also recorded as JFR events, see
+ * EditorEvents. Safe to update from any thread.
+ */
+public class PerfStats {
+    private static final PerfStats GLOBAL = new PerfStats();
+
+    private final Histogram redraw = new Histogram();
+    private final Histogram shapes = new Histogram();
+    private final Histogram selection = new Histogram();
+    private final Histogram save = new Histogram();
+    private final Histogram load = new Histogram();
+    private long lastShapesPerFrame;
+    private long savedBytes, saveNanos; // Totals for the encode rate
+    private long lastLoadPreviewNanos;
+    private long windowStart = System.nanoTime(); // Start of the window redraw rates are measured over
+    private long windowRedraws;
+
+    public static PerfStats global() {
+        return GLOBAL;
+    }
+
+    public synchronized void recordRedraw(long nanos, long shapeNanos, int shapesDrawn) {
+        redraw.record(nanos);
+        shapes.record(shapeNanos);
+        lastShapesPerFrame = shapesDrawn;
+    }
+
+    public synchronized void recordSelection(long nanos) {
+        selection.record(nanos);
+    }
+
+    public synchronized void recordSave(long nanos, long bytes) {
+        save.record(nanos);
+        savedBytes += bytes;
+        saveNanos += nanos;
+    }
+
+    public synchronized void recordLoad(long nanos, long previewNanos) {
+        load.record(nanos);
+        lastLoadPreviewNanos = previewNanos;
+    }
+
+    /**
+     * Formats the statistics for the HUD. Redraws per second are measured
+     * since the previous call.
+     *
+     * @return One line per hot path.
+     */
+    public synchronized String summary() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - windowStart) / 1e9);
+        double redrawsPerSecond = (redraw.count - windowRedraws) / seconds;
+        windowStart = now;
+        windowRedraws = redraw.count;
+
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("redraw  %5.1f/s  %s  %d shapes/frame%n", redrawsPerSecond, redraw, lastShapesPerFrame));
+        text.append(String.format("shapes  %s%n", shapes));
+        text.append(String.format("select  %s%n", selection));
+        text.append(String.format("save    %s  %.1f MB/s encoded%n", save,
+                saveNanos == 0 ? 0 : savedBytes / (1024.0 * 1024.0) / (saveNanos / 1e9)));
+        text.append(String.format("load    %s  preview after %.0f ms", load, lastLoadPreviewNanos / 1e6));
+        return text.toString();
+    }
+
+    /**
+     * Latency histogram with power-of-two microsecond buckets, so recording is
+     * a few instructions and needs no allocation.
+     */
+    static class Histogram {
+        private final long[] buckets = new long[40]; // Bucket i holds [2^(i-1), 2^i) microseconds
+        private long count;
+        private long maxNanos;
+
+        void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            buckets[Math.min(buckets.length - 1, 64 - Long.numberOfLeadingZeros(micros))]++;
+            count++;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        /**
+         * Returns the upper edge of the bucket holding a percentile.
+         *
+         * @param percentile Between 0 and 100.
+         * @return The latency in milliseconds.
+         */
+        double percentileMillis(double percentile) {
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return (1L << i) / 1000.0;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("n=%-6d p50 %7.2f ms  p99 %7.2f ms  max %7.2f ms", count, percentileMillis(50),
+                    percentileMillis(99), maxNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An image filter working on ARGB int buffers. Every pass is split into bands
+ * of rows that run on the common fork-join pool, so a filter uses every core.
+ * Blurs are separable sliding-window box passes: the cost per pixel does not
+ * depend on the radius, and the only buffers are a scratch image and one row
+ * per worker thread, which are reused from pass to pass. Alpha is kept as is
+ * by every filter except the blurs, which blur it like the colour channels.
+ */
+public class PixelFilter {
+    public static final byte GRAYSCALE = 1;
+    public static final byte INVERT = 2;
+    public static final byte BRIGHTNESS_CONTRAST = 3; // amount is the brightness offset, from -1 to 1; strength the contrast factor
+    public static final byte BOX_BLUR = 4; // amount is the radius in pixels
+    public static final byte GAUSSIAN_BLUR = 5; // amount is the standard deviation in pixels
+    public static final byte SHARPEN = 6; // amount is the radius in pixels; strength how much detail is added
+
+    private static final int BAND_ROWS = 64; // Rows per fork-join task
+    private static final int GAUSSIAN_PASSES = 3; // Three box blurs come within a few percent of a Gaussian
+
+    // Per-worker scratch, so blur passes allocate nothing once the pool is warm
+    private static final ThreadLocal<int[]> ROW_BUFFER = ThreadLocal.withInitial(() -> new int[0]);
+
+    private final byte kind;
+    private final double amount;
+    private final double strength;
+
+    public PixelFilter(byte kind, double amount, double strength) {
+        this.kind = kind;
+        this.amount = amount;
+        this.strength = strength;
+    }
+
+    public static PixelFilter grayscale() {
+        return new PixelFilter(GRAYSCALE, 0, 0);
+    }
+
+    public static PixelFilter invert() {
+        return new PixelFilter(INVERT, 0, 0);
+    }
+
+    public static PixelFilter brightnessContrast(double brightness, double contrast) {
+        return new PixelFilter(BRIGHTNESS_CONTRAST, brightness, contrast);
+    }
+
+    public static PixelFilter boxBlur(int radius) {
+        return new PixelFilter(BOX_BLUR, radius, 0);
+    }
+
+    public static PixelFilter gaussianBlur(double sigma) {
+        return new PixelFilter(GAUSSIAN_BLUR, sigma, 0);
+    }
+
+    public static PixelFilter sharpen(int radius, double strength) {
+        return new PixelFilter(SHARPEN, radius, strength);
+    }
+
+    public byte getKind() {
+        return kind;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public double getStrength() {
+        return strength;
+    }
+
+    /**
+     * Tells whether the filter needs a scratch buffer the size of the image.
+     *
+     * @return true for the blurs and sharpen.
+     */
+    public boolean needsScratch() {
+        return kind == BOX_BLUR || kind == GAUSSIAN_BLUR || kind == SHARPEN;
+    }
+
+    /**
+     * Filters an image into a new one. The source image is not changed.
+     *
+     * @param image The image to filter.
+     * @return The filtered copy.
+     */
+    public WritableImage apply(Image image) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        int[] pixels = new int[width * height];
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        apply(pixels, width, height, needsScratch() ? new int[pixels.length] : null);
+
+        WritableImage result = new WritableImage(width, height);
+        result.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return result;
+    }
+
+    /**
+     * Filters ARGB pixels in place.
+     *
+     * @param pixels  The pixels, row by row.
+     * @param width   The width of the image.
+     * @param height  The height of the image.
+     * @param scratch A buffer as long as pixels, whose contents are overwritten. May be null if needsScratch() is false.
+     */
+    public void apply(int[] pixels, int width, int height, int[] scratch) {
+        switch (kind) {
+            case GRAYSCALE:
+                inBands(height, (from, to) -> grayscale(pixels, from * width, to * width));
+                break;
+            case INVERT:
+                inBands(height, (from, to) -> invert(pixels, from * width, to * width));
+                break;
+            case BRIGHTNESS_CONTRAST: {
+                int[] table = brightnessContrastTable(amount, strength);
+                inBands(height, (from, to) -> lookUp(pixels, from * width, to * width, table));
+                break;
+            }
+            case BOX_BLUR:
+                boxBlur(pixels, scratch, width, height, (int) Math.round(amount));
+                break;
+            case GAUSSIAN_BLUR:
+                for (int radius : gaussianRadii(amount)) {
+                    boxBlur(pixels, scratch, width, height, radius);
+                }
+                break;
+            case SHARPEN: {
+                // Unsharp mask: add back the difference between the image and a blurred copy
+                int radius = (int) Math.round(amount);
+                int[] divide = divisionTable(radius);
+                inBands(height, (from, to) -> blurColumns(pixels, scratch, width, height, radius, divide, from, to));
+                inBands(height, (from, to) -> blurRows(scratch, scratch, width, radius, divide, from, to));
+                int weight = (int) Math.round(strength * 256);
+                inBands(height, (from, to) -> unsharp(pixels, scratch, from * width, to * width, weight));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown filter " + kind);
+        }
+    }
+
+    /**
+     * One separable box blur pass. The vertical half reads pixels and writes
+     * scratch, so bands never read rows another band is writing; the
+     * horizontal half then works row by row back into pixels.
+     */
+    private static void boxBlur(int[] pixels, int[] scratch, int width, int height, int radius) {
+        if (radius < 1) {
+            return;
+        }
+        int[] divide = divisionTable(radius);
+        inBands(height, (from, to) -> blurColumns(pixels, scratch, width, height, radius, divide, from, to));
+        inBands(height, (from, to) -> blurRows(scratch, pixels, width, radius, divide, from, to));
+    }
+
+    /**
+     * Maps every possible window sum of one channel to its rounded average,
+     * which is much cheaper than four integer divisions per pixel.
+     */
+    private static int[] divisionTable(int radius) {
+        int window = 2 * radius + 1;
+        int[] table = new int[256 * window];
+        for (int sum = 0; sum < table.length; sum++) {
+            table[sum] = (sum + radius) / window;
+        }
+        return table;
+    }
+
+    /**
+     * Averages each pixel of rows from..to with the radius rows above and
+     * below it. A running sum per column and channel slides down the band, so
+     * each output row costs one added and one removed row.
+     */
+    private static void blurColumns(int[] source, int[] target, int width, int height, int radius, int[] divide,
+                                    int from, int to) {
+        int[] sums = rowBuffer(width * 4);
+        for (int i = 0; i < width * 4; i++) {
+            sums[i] = 0;
+        }
+        for (int y = from - radius; y <= from + radius; y++) {
+            addRow(source, sums, width, Math.max(0, Math.min(height - 1, y)), 1);
+        }
+        for (int y = from; y < to; y++) {
+            int row = y * width;
+            for (int x = 0, s = 0; x < width; x++, s += 4) {
+                target[row + x] = (divide[sums[s]] << 24) | (divide[sums[s + 1]] << 16) | (divide[sums[s + 2]] << 8)
+                        | divide[sums[s + 3]];
+            }
+            addRow(source, sums, width, Math.min(height - 1, y + radius + 1), 1);
+            addRow(source, sums, width, Math.max(0, y - radius), -1);
+        }
+    }
+
+    private static void addRow(int[] source, int[] sums, int width, int y, int sign) {
+        int row = y * width;
+        for (int x = 0, s = 0; x < width; x++, s += 4) {
+            int argb = source[row + x];
+            sums[s] += sign * (argb >>> 24);
+            sums[s + 1] += sign * ((argb >> 16) & 0xff);
+            sums[s + 2] += sign * ((argb >> 8) & 0xff);
+            sums[s + 3] += sign * (argb & 0xff);
+        }
+    }
+
+    /**
+     * Averages each pixel of rows from..to with the radius pixels to its left
+     * and right. Each row is copied to a per-thread buffer first, so source and
+     * target may be the same array.
+     */
+    private static void blurRows(int[] source, int[] target, int width, int radius, int[] divide, int from, int to) {
+        int[] line = rowBuffer(width);
+        for (int y = from; y < to; y++) {
+            int row = y * width;
+            System.arraycopy(source, row, line, 0, width);
+            int a = 0, r = 0, g = 0, b = 0;
+            for (int x = -radius; x <= radius; x++) {
+                int argb = line[Math.max(0, Math.min(width - 1, x))];
+                a += argb >>> 24;
+                r += (argb >> 16) & 0xff;
+                g += (argb >> 8) & 0xff;
+                b += argb & 0xff;
+            }
+            for (int x = 0; x < width; x++) {
+                target[row + x] = (divide[a] << 24) | (divide[r] << 16) | (divide[g] << 8) | divide[b];
+                int added = line[Math.min(width - 1, x + radius + 1)];
+                int removed = line[Math.max(0, x - radius)];
+                a += (added >>> 24) - (removed >>> 24);
+                r += ((added >> 16) & 0xff) - ((removed >> 16) & 0xff);
+                g += ((added >> 8) & 0xff) - ((removed >> 8) & 0xff);
+                b += (added & 0xff) - (removed & 0xff);
+            }
+        }
+    }
+
+    private static void grayscale(int[] pixels, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int argb = pixels[i];
+            // Rec. 601 luma in fixed point, the weights sum to 256
+            int luma = (77 * ((argb >> 16) & 0xff) + 150 * ((argb >> 8) & 0xff) + 29 * (argb & 0xff)) >> 8;
+            pixels[i] = (argb & 0xff000000) | (luma << 16) | (luma << 8) | luma;
+        }
+    }
+
+    private static void invert(int[] pixels, int from, int to) {
+        for (int i = from; i < to; i++) {
+            pixels[i] ^= 0x00ffffff;
+        }
+    }
+
+    private static void lookUp(int[] pixels, int from, int to, int[] table) {
+        for (int i = from; i < to; i++) {
+            int argb = pixels[i];
+            pixels[i] = (argb & 0xff000000) | (table[(argb >> 16) & 0xff] << 16) | (table[(argb >> 8) & 0xff] << 8)
+                    | table[argb & 0xff];
+        }
+    }
+
+    private static void unsharp(int[] pixels, int[] blurred, int from, int to, int weight) {
+        for (int i = from; i < to; i++) {
+            int argb = pixels[i];
+            int soft = blurred[i];
+            int r = sharpenChannel((argb >> 16) & 0xff, (soft >> 16) & 0xff, weight);
+            int g = sharpenChannel((argb >> 8) & 0xff, (soft >> 8) & 0xff, weight);
+            int b = sharpenChannel(argb & 0xff, soft & 0xff, weight);
+            pixels[i] = (argb & 0xff000000) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    private static int sharpenChannel(int value, int blurred, int weight) {
+        return clamp(value + (((value - blurred) * weight) >> 8));
+    }
+
+    /**
+     * Maps each channel value through brightness and contrast once, so the
+     * per-pixel work is three table lookups.
+     */
+    private static int[] brightnessContrastTable(double brightness, double contrast) {
+        int[] table = new int[256];
+        for (int v = 0; v < 256; v++) {
+            table[v] = clamp((int) Math.round((v - 127.5) * contrast + 127.5 + brightness * 255));
+        }
+        return table;
+    }
+
+    /**
+     * Picks the radii of box blurs whose sequence approximates a Gaussian of
+     * the given standard deviation.
+     */
+    static int[] gaussianRadii(double sigma) {
+        int[] radii = new int[GAUSSIAN_PASSES];
+        double ideal = Math.sqrt(12 * sigma * sigma / GAUSSIAN_PASSES + 1); // Ideal width of each box
+        int lower = (int) Math.floor(ideal);
+        if (lower % 2 == 0) {
+            lower--;
+        }
+        int upper = lower + 2;
+        // Use the smaller width for as many passes as keeps the total variance closest to sigma squared
+        double m = (12 * sigma * sigma - GAUSSIAN_PASSES * lower * lower - 4 * GAUSSIAN_PASSES * lower - 3 * GAUSSIAN_PASSES)
+                / (-4 * lower - 4);
+        long smaller = Math.round(m);
+        for (int i = 0; i < GAUSSIAN_PASSES; i++) {
+            radii[i] = ((i < smaller ? lower : upper) - 1) / 2;
+        }
+        return radii;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    private static int[] rowBuffer(int length) {
+        int[] buffer = ROW_BUFFER.get();
+        if (buffer.length < length) {
+            buffer = new int[length];
+            ROW_BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Runs a pass over rows 0..height in bands of at most BAND_ROWS rows on
+     * the common fork-join pool and waits for all of them.
+     */
+    static void inBands(int height, RowPass pass) {
+        ForkJoinPool.commonPool().invoke(new Bands(pass, 0, height));
+    }
+
+    interface RowPass {
+        void run(int fromRow, int toRow);
+    }
+
+    /**
+     * Splits a row range in halves until it is at most BAND_ROWS high, so idle
+     * workers can steal the halves of larger ranges.
+     */
+    private static class Bands extends RecursiveAction {
+        private static final long serialVersionUID = 1L; // Never serialized; ForkJoinTask is Serializable
+
+        private final RowPass pass;
+        private final int from, to;
+
+        Bands(RowPass pass, int from, int to) {
+            this.pass = pass;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BAND_ROWS) {
+                pass.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Bands(pass, from, middle), new Bands(pass, middle, to));
+        }
+    }
+}
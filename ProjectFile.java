@@ -0,0 +1,385 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The editor's native document format. It keeps the vector shapes, which a
+ * flattened PNG loses, and the background either as a reference to its file
+ * or as embedded ARGB pixels.
+ *
+ * Layout, big-endian:
+ * <pre>
+ * header     64 bytes: magic, version, shape count, point count, palette size,
+ *            background kind, image width, image height, then the offset and
+ *            length of the shape block and of the background block
+ * shapes     palette as ARGB ints, then ShapeStore.writeColumns
+ * background a UTF file URI, or width * height ARGB ints
+ * </pre>
+ * Opening a project maps the shape block into memory and checks it against
+ * the header, but reads nothing else up front. Shapes can be read one at a
+ * time straight from the mapping, or bulk-copied into a ShapeStore column by
+ * column.
+ */
+public class ProjectFile implements Closeable {
+    private static final int MAGIC = 0x4A50524A; // "JPRJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int PIXEL_CHUNK = 64 * 1024; // Pixels converted to bytes at a time when writing
+
+    public static final int BACKGROUND_NONE = 0;
+    public static final int BACKGROUND_REFERENCE = 1; // The background is loaded from a file URI
+    public static final int BACKGROUND_PIXELS = 2; // The background pixels are embedded
+
+    private final FileChannel channel;
+    private final MappedByteBuffer shapeBlock; // Palette, shape columns and point pool
+    private final int shapeCount, pointCount;
+    private final int backgroundKind, imageWidth, imageHeight;
+    private final long backgroundOffset, backgroundLength;
+    private final Color[] palette;
+    // Byte offsets of each column within shapeBlock
+    private final int kindsAt, startXAt, startYAt, endXAt, endYAt, colorAt, widthAt, pointOffsetAt, pointCountAt;
+    private final int pointXAt, pointYAt;
+
+    private ProjectFile(FileChannel channel, ByteBuffer header) throws IOException {
+        this.channel = channel;
+        shapeCount = header.getInt();
+        pointCount = header.getInt();
+        int paletteSize = header.getInt();
+        backgroundKind = header.getInt();
+        imageWidth = header.getInt();
+        imageHeight = header.getInt();
+        long shapeOffset = header.getLong();
+        long shapeLength = header.getLong();
+        backgroundOffset = header.getLong();
+        backgroundLength = header.getLong();
+        if (shapeCount < 0 || pointCount < 0 || paletteSize < 0 || imageWidth < 0 || imageHeight < 0
+                || backgroundKind < BACKGROUND_NONE || backgroundKind > BACKGROUND_PIXELS) {
+            throw new IOException("Project file has a corrupt header");
+        }
+        if (shapeOffset < HEADER_SIZE || shapeLength < 0 || backgroundOffset < HEADER_SIZE || backgroundLength < 0
+                || shapeLength > Integer.MAX_VALUE || backgroundLength > Integer.MAX_VALUE
+                || shapeOffset + shapeLength > channel.size()
+                || backgroundOffset + backgroundLength > channel.size()) {
+            throw new IOException("Project file is truncated or too large");
+        }
+        // The columns' sizes follow from the counts, so any other length means the counts are wrong
+        if (shapeLength != paletteSize * 4L + ShapeStore.paddedKindBytes(shapeCount) + shapeCount * 32L
+                + pointCount * 8L) {
+            throw new IOException("Project file's shape block does not match its header");
+        }
+        if (backgroundKind == BACKGROUND_PIXELS ? backgroundLength != (long) imageWidth * imageHeight * 4
+                : backgroundKind == BACKGROUND_REFERENCE && backgroundLength < 2) {
+            throw new IOException("Project file's background does not match its header");
+        }
+
+        shapeBlock = channel.map(FileChannel.MapMode.READ_ONLY, shapeOffset, shapeLength);
+        palette = new Color[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            palette[i] = ShapeStore.fromArgb(shapeBlock.getInt(i * 4));
+        }
+        kindsAt = paletteSize * 4;
+        startXAt = kindsAt + ShapeStore.paddedKindBytes(shapeCount);
+        startYAt = startXAt + shapeCount * 4;
+        endXAt = startYAt + shapeCount * 4;
+        endYAt = endXAt + shapeCount * 4;
+        colorAt = endYAt + shapeCount * 4;
+        widthAt = colorAt + shapeCount * 4;
+        pointOffsetAt = widthAt + shapeCount * 4;
+        pointCountAt = pointOffsetAt + shapeCount * 4;
+        pointXAt = pointCountAt + shapeCount * 4;
+        pointYAt = pointXAt + pointCount * 4;
+        checkShapes();
+    }
+
+    /**
+     * Checks every shape's kind, palette index and points against the header,
+     * so nothing read from the mapping later can index out of bounds.
+     */
+    private void checkShapes() throws IOException {
+        for (int id = 0; id < shapeCount; id++) {
+            byte kind = getKind(id);
+            int color = shapeBlock.getInt(colorAt + id * 4);
+            int first = shapeBlock.getInt(pointOffsetAt + id * 4);
+            int count = getPointCount(id);
+            if (kind < ShapeStore.SQUARE || kind > ShapeStore.FILL || color < 0 || color >= palette.length
+                    || first < 0 || count < 0 || (long) first + count > pointCount) {
+                throw new IOException("Project file has a corrupt shape at index " + id);
+            }
+        }
+    }
+
+    /**
+     * Writes a project. The file is written to a temporary sibling first and
+     * renamed over the target, so an interrupted save keeps the old project.
+     *
+     * @param file          The file to write.
+     * @param shapes        The shapes of the document.
+     * @param backgroundUri The background's file URI, or null to embed pixels or have no background.
+     * @param pixels        The background as ARGB pixels, or null.
+     * @param width         The width of the pixels, or of the referenced image.
+     * @param height        The height of the pixels, or of the referenced image.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(File file, ShapeStore shapes, String backgroundUri, int[] pixels, int width, int height)
+            throws IOException {
+        int kind = backgroundUri != null ? BACKGROUND_REFERENCE : pixels != null ? BACKGROUND_PIXELS : BACKGROUND_NONE;
+        long shapeLength = shapes.getPaletteSize() * 4L + shapes.columnBytes();
+        long backgroundOffset = HEADER_SIZE + shapeLength;
+
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), "." + file.getName(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(shapes.size());
+                out.writeInt(shapes.getPointPoolSize());
+                out.writeInt(shapes.getPaletteSize());
+                out.writeInt(kind);
+                out.writeInt(width);
+                out.writeInt(height);
+                out.writeLong(HEADER_SIZE);
+                out.writeLong(shapeLength);
+                out.writeLong(backgroundOffset);
+                out.writeLong(0); // Background length, patched below once known
+                for (int i = 0; i < shapes.getPaletteSize(); i++) {
+                    out.writeInt(ShapeStore.toArgb(shapes.getPaletteColor(i)));
+                }
+                shapes.writeColumns(out);
+                if (kind == BACKGROUND_REFERENCE) {
+                    out.writeUTF(backgroundUri);
+                } else if (kind == BACKGROUND_PIXELS) {
+                    writePixels(out, pixels, width * height);
+                }
+            }
+            try (FileChannel patch = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer length = ByteBuffer.allocate(8);
+                length.putLong(patch.size() - backgroundOffset).flip();
+                patch.write(length, HEADER_SIZE - 8);
+                patch.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Opens a project and maps its shape block. Nothing else is read until it is asked for.
+     *
+     * @param file The project file.
+     * @return The open project.
+     * @throws IOException If the file cannot be read or is not a project.
+     */
+    public static ProjectFile open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a project file");
+            }
+            if (header.getInt() != VERSION) {
+                throw new IOException(file + " was written by an unsupported version");
+            }
+            return new ProjectFile(channel, header);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Tells whether a file starts like a project file.
+     *
+     * @param file The file to check.
+     * @return true if it has the project magic number.
+     */
+    public static boolean isProject(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            return channel.read(magic, 0) == 4 && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public int getShapeCount() {
+        return shapeCount;
+    }
+
+    public byte getKind(int id) {
+        return shapeBlock.get(kindsAt + id);
+    }
+
+    public float getStartX(int id) {
+        return shapeBlock.getFloat(startXAt + id * 4);
+    }
+
+    public float getStartY(int id) {
+        return shapeBlock.getFloat(startYAt + id * 4);
+    }
+
+    public float getEndX(int id) {
+        return shapeBlock.getFloat(endXAt + id * 4);
+    }
+
+    public float getEndY(int id) {
+        return shapeBlock.getFloat(endYAt + id * 4);
+    }
+
+    public Color getColor(int id) {
+        return palette[shapeBlock.getInt(colorAt + id * 4)];
+    }
+
+    public float getWidth(int id) {
+        return shapeBlock.getFloat(widthAt + id * 4);
+    }
+
+    public int getPointCount(int id) {
+        return shapeBlock.getInt(pointCountAt + id * 4);
+    }
+
+    /**
+     * Copies a pen stroke's points straight from the mapping.
+     *
+     * @param id The id of a pen stroke.
+     * @param xs Receives the x-coordinates.
+     * @param ys Receives the y-coordinates.
+     */
+    public void copyPoints(int id, double[] xs, double[] ys) {
+        int first = shapeBlock.getInt(pointOffsetAt + id * 4);
+        int count = getPointCount(id);
+        for (int i = 0; i < count; i++) {
+            xs[i] = shapeBlock.getFloat(pointXAt + (first + i) * 4);
+            ys[i] = shapeBlock.getFloat(pointYAt + (first + i) * 4);
+        }
+    }
+
+    /**
+     * Loads every shape into a store with one bulk copy per column.
+     *
+     * @param into The store to replace the contents of.
+     */
+    public void loadShapes(ShapeStore into) {
+        ByteBuffer columns = shapeBlock.duplicate();
+        columns.position(kindsAt);
+        into.readColumns(columns, shapeCount, pointCount, palette);
+    }
+
+    public int getBackgroundKind() {
+        return backgroundKind;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    /**
+     * Reads the location of a referenced background.
+     *
+     * @return The file, or null if the background is not a reference.
+     */
+    public File getBackgroundFile() throws IOException {
+        String uri = getBackgroundUri();
+        if (uri == null) {
+            return null;
+        }
+        try {
+            return new File(new URI(uri));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("Project file's background is not a file: " + uri, e);
+        }
+    }
+
+    /**
+     * Reads the URI of a referenced background.
+     *
+     * @return The URI, or null if the background is not a reference.
+     */
+    public String getBackgroundUri() throws IOException {
+        if (backgroundKind != BACKGROUND_REFERENCE) {
+            return null;
+        }
+        ByteBuffer block = ByteBuffer.allocate((int) backgroundLength);
+        while (block.hasRemaining()) {
+            if (channel.read(block, backgroundOffset + block.position()) < 0) {
+                throw new IOException("Project file is truncated");
+            }
+        }
+        block.flip();
+        int length = block.getShort() & 0xffff;
+        if (length > block.remaining()) {
+            throw new IOException("Project file has a corrupt background URI");
+        }
+        byte[] utf = new byte[length];
+        block.get(utf);
+        return new String(utf, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies embedded background pixels from a mapping into a new image.
+     *
+     * @return The background, or null if no pixels are embedded.
+     */
+    public WritableImage readBackgroundPixels() throws IOException {
+        if (backgroundKind != BACKGROUND_PIXELS) {
+            return null;
+        }
+        IntBuffer pixels = channel.map(FileChannel.MapMode.READ_ONLY, backgroundOffset, backgroundLength).asIntBuffer();
+        WritableImage image = new WritableImage(imageWidth, imageHeight);
+        image.getPixelWriter().setPixels(0, 0, imageWidth, imageHeight, PixelFormat.getIntArgbInstance(), pixels, imageWidth);
+        return image;
+    }
+
+    /**
+     * Closes the file. Shapes already loaded stay valid.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static void writePixels(DataOutputStream out, int[] pixels, int count) throws IOException {
+        byte[] bytes = new byte[PIXEL_CHUNK * 4];
+        IntBuffer view = ByteBuffer.wrap(bytes).asIntBuffer(); // Converts ints to big-endian bytes in bulk
+        for (int i = 0; i < count; i += PIXEL_CHUNK) {
+            int n = Math.min(PIXEL_CHUNK, count - i);
+            view.clear();
+            view.put(pixels, i, n);
+            out.write(bytes, 0, n * 4);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.paint.Color;
+
+/**
+ * The drawing operations shapes are made of. ShapeRenderer draws the shape
+ * model through this interface, so the same document can be drawn on a JavaFX
+ * canvas or, without a display or the JavaFX thread, into a BufferedImage.
+ */
+public interface Renderer {
+    void setStroke(Color color);
+
+    void setLineWidth(double width);
+
+    void strokeRect(double x, double y, double width, double height);
+
+    void strokeOval(double x, double y, double width, double height);
+
+    void strokePolygon(double[] xPoints, double[] yPoints, int count);
+
+    /**
+     * Strokes an open polyline with round caps and joins, as used for pen strokes.
+     *
+     * @param xPoints The x-coordinates of the points.
+     * @param yPoints The y-coordinates of the points.
+     * @param count   The number of points to use.
+     */
+    void strokePolyline(double[] xPoints, double[] yPoints, int count);
+
+    /**
+     * Fills rectangles in the current stroke color, as used for paint bucket
+     * fills. Each rectangle is given by two opposite corners.
+     *
+     * @param xPoints The x-coordinates of the corners, two per rectangle.
+     * @param yPoints The y-coordinates of the corners, two per rectangle.
+     * @param count   The number of corners to use.
+     */
+    void fillRects(double[] xPoints, double[] yPoints, int count);
+}
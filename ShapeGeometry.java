@@ -0,0 +1,258 @@
+package com.example.imageeditorjaden;
+
+/**
+ * Geometry helpers shared by drawing and hit testing, so every shape type is
+ * measured the same way it is stroked in DrawingCanvas.
+ */
+public final class ShapeGeometry {
+    public static final int MAX_VERTICES = 8; // Most corners vertices() writes, for an octagon
+    private static final double OCTAGON_APOTHEM = Math.cos(Math.PI / 8); // Apothem of a unit-radius octagon
+    private static final int ELLIPSE_SEGMENTS = 64; // Segments of the polygon that stands in for an ellipse outline
+    // Vertices of a unit-radius octagon, one every 45 degrees from 0
+    private static final double[] OCTAGON_COS = new double[8], OCTAGON_SIN = new double[8];
+    // Edge normals of that octagon, which sit at 22.5 + 45k degrees
+    private static final double[] OCTAGON_NORMAL_COS = new double[8], OCTAGON_NORMAL_SIN = new double[8];
+
+    static {
+        for (int i = 0; i < 8; i++) {
+            OCTAGON_COS[i] = Math.cos(i * Math.PI / 4);
+            OCTAGON_SIN[i] = Math.sin(i * Math.PI / 4);
+            OCTAGON_NORMAL_COS[i] = Math.cos(Math.PI / 8 + i * Math.PI / 4);
+            OCTAGON_NORMAL_SIN[i] = Math.sin(Math.PI / 8 + i * Math.PI / 4);
+        }
+    }
+
+    private ShapeGeometry() {
+    }
+
+    /**
+     * Computes the axis-aligned bounds of a shape as drawn on the canvas.
+     *
+     * @param kind   The shape's ShapeStore kind code.
+     * @param startX The x-coordinate where the drag started.
+     * @param startY The y-coordinate where the drag started.
+     * @param endX   The x-coordinate where the drag ended.
+     * @param endY   The y-coordinate where the drag ended.
+     * @param out    Receives minX, minY, maxX, maxY.
+     */
+    public static void bounds(byte kind, double startX, double startY, double endX, double endY, double[] out) {
+        switch (kind) {
+            case ShapeStore.SQUARE: {
+                double side = endX - startX; // Squares use the horizontal drag for both sides
+                setBounds(out, startX, startY, startX + side, startY + side);
+                break;
+            }
+            case ShapeStore.CIRCLE: {
+                double radius = Math.hypot(endX - startX, endY - startY);
+                setBounds(out, startX - radius, startY - radius, startX + radius, startY + radius);
+                break;
+            }
+            case ShapeStore.TRIANGLE: {
+                double apexY = startY - (endY - startY);
+                out[0] = Math.min(startX, endX);
+                out[1] = Math.min(Math.min(startY, endY), apexY);
+                out[2] = Math.max(startX, endX);
+                out[3] = Math.max(Math.max(startY, endY), apexY);
+                break;
+            }
+            case ShapeStore.OCTAGON: {
+                double centerX = (startX + endX) / 2;
+                double centerY = (startY + endY) / 2;
+                double radius = Math.hypot(endX - startX, endY - startY) / 2;
+                setBounds(out, centerX - radius, centerY - radius, centerX + radius, centerY + radius);
+                break;
+            }
+            default: // rectangle, ellipse
+                setBounds(out, startX, startY, endX, endY);
+                break;
+        }
+    }
+
+    /**
+     * Tests whether a point falls on or inside a shape.
+     *
+     * @param kind      The shape's ShapeStore kind code.
+     * @param startX    The x-coordinate where the drag started.
+     * @param startY    The y-coordinate where the drag started.
+     * @param endX      The x-coordinate where the drag ended.
+     * @param endY      The y-coordinate where the drag ended.
+     * @param tolerance Extra distance around the outline that still counts as a hit.
+     * @param x         The x-coordinate being tested.
+     * @param y         The y-coordinate being tested.
+     * @return true if the point hits the shape.
+     */
+    public static boolean contains(byte kind, double startX, double startY, double endX, double endY,
+                                   double tolerance, double x, double y) {
+        switch (kind) {
+            case ShapeStore.SQUARE: {
+                double side = endX - startX;
+                return inBox(startX, startY, startX + side, startY + side, tolerance, x, y);
+            }
+            case ShapeStore.CIRCLE: {
+                double radius = Math.hypot(endX - startX, endY - startY);
+                return Math.hypot(x - startX, y - startY) <= radius + tolerance;
+            }
+            case ShapeStore.ELLIPSE: {
+                double radiusX = Math.abs(endX - startX) / 2 + tolerance;
+                double radiusY = Math.abs(endY - startY) / 2 + tolerance;
+                double dx = (x - (startX + endX) / 2) / radiusX;
+                double dy = (y - (startY + endY) / 2) / radiusY;
+                return dx * dx + dy * dy <= 1;
+            }
+            case ShapeStore.TRIANGLE:
+                return inTriangle(startX, startY, endX, endY, (startX + endX) / 2, startY - (endY - startY), tolerance, x, y);
+            case ShapeStore.OCTAGON: {
+                double radius = Math.hypot(endX - startX, endY - startY) / 2;
+                return inOctagon((startX + endX) / 2, (startY + endY) / 2, radius, tolerance, x, y);
+            }
+            default: // rectangle
+                return inBox(startX, startY, endX, endY, tolerance, x, y);
+        }
+    }
+
+    /**
+     * Writes the corners of a polygonal shape into caller-owned buffers, so
+     * drawing needs neither trigonometry nor fresh arrays per shape.
+     *
+     * @param kind   TRIANGLE or OCTAGON.
+     * @param startX The x-coordinate where the drag started.
+     * @param startY The y-coordinate where the drag started.
+     * @param endX   The x-coordinate where the drag ended.
+     * @param endY   The y-coordinate where the drag ended.
+     * @param xs     Receives the x-coordinates; needs room for MAX_VERTICES.
+     * @param ys     Receives the y-coordinates; needs room for MAX_VERTICES.
+     * @return The number of corners written, or 0 if the kind is not polygonal.
+     */
+    public static int vertices(byte kind, double startX, double startY, double endX, double endY, double[] xs, double[] ys) {
+        switch (kind) {
+            case ShapeStore.TRIANGLE:
+                xs[0] = startX;
+                ys[0] = startY;
+                xs[1] = endX;
+                ys[1] = endY;
+                xs[2] = (startX + endX) / 2;
+                ys[2] = startY - (endY - startY); // Apex mirrors the drag above the start
+                return 3;
+            case ShapeStore.OCTAGON: {
+                double centerX = (startX + endX) / 2;
+                double centerY = (startY + endY) / 2;
+                double radius = Math.hypot(endX - startX, endY - startY) / 2;
+                for (int i = 0; i < 8; i++) {
+                    xs[i] = centerX + radius * OCTAGON_COS[i];
+                    ys[i] = centerY + radius * OCTAGON_SIN[i];
+                }
+                return 8;
+            }
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Traces the outline of a shape as a closed polyline, for transforms that
+     * the shape's own kind cannot express, such as a rotated rectangle.
+     * Ellipses and circles are approximated by a polygon of ELLIPSE_SEGMENTS
+     * sides.
+     *
+     * @param kind   The shape's ShapeStore kind code, not PEN.
+     * @param startX The x-coordinate where the drag started.
+     * @param startY The y-coordinate where the drag started.
+     * @param endX   The x-coordinate where the drag ended.
+     * @param endY   The y-coordinate where the drag ended.
+     * @return The outline, with the first point repeated at the end.
+     */
+    public static PenStroke outline(byte kind, double startX, double startY, double endX, double endY) {
+        PenStroke outline = new PenStroke(ELLIPSE_SEGMENTS + 1);
+        switch (kind) {
+            case ShapeStore.SQUARE:
+                rectangle(outline, startX, startY, endX, startY + (endX - startX)); // Equal sides
+                break;
+            case ShapeStore.RECTANGLE:
+                rectangle(outline, startX, startY, endX, endY);
+                break;
+            case ShapeStore.TRIANGLE:
+            case ShapeStore.OCTAGON: {
+                double[] xs = new double[MAX_VERTICES], ys = new double[MAX_VERTICES];
+                int count = vertices(kind, startX, startY, endX, endY, xs, ys);
+                for (int i = 0; i < count; i++) {
+                    outline.add(xs[i], ys[i]);
+                }
+                break;
+            }
+            default: { // circle, ellipse
+                double centerX = kind == ShapeStore.CIRCLE ? startX : (startX + endX) / 2;
+                double centerY = kind == ShapeStore.CIRCLE ? startY : (startY + endY) / 2;
+                double radiusX = kind == ShapeStore.CIRCLE ? Math.hypot(endX - startX, endY - startY) : (endX - startX) / 2;
+                double radiusY = kind == ShapeStore.CIRCLE ? radiusX : (endY - startY) / 2;
+                for (int i = 0; i < ELLIPSE_SEGMENTS; i++) {
+                    double angle = 2 * Math.PI * i / ELLIPSE_SEGMENTS;
+                    outline.add(centerX + radiusX * Math.cos(angle), centerY + radiusY * Math.sin(angle));
+                }
+                break;
+            }
+        }
+        outline.add(outline.getX(0), outline.getY(0)); // Close the outline
+        return outline;
+    }
+
+    /**
+     * Computes the squared distance from a point to a line segment.
+     *
+     * @return The squared distance from (px, py) to the segment from (ax, ay) to (bx, by).
+     */
+    public static double segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+
+    private static void rectangle(PenStroke outline, double x1, double y1, double x2, double y2) {
+        outline.add(x1, y1);
+        outline.add(x2, y1);
+        outline.add(x2, y2);
+        outline.add(x1, y2);
+    }
+
+    private static void setBounds(double[] out, double x1, double y1, double x2, double y2) {
+        out[0] = Math.min(x1, x2);
+        out[1] = Math.min(y1, y2);
+        out[2] = Math.max(x1, x2);
+        out[3] = Math.max(y1, y2);
+    }
+
+    private static boolean inBox(double x1, double y1, double x2, double y2, double tolerance, double x, double y) {
+        return Math.min(x1, x2) - tolerance <= x && x <= Math.max(x1, x2) + tolerance
+                && Math.min(y1, y2) - tolerance <= y && y <= Math.max(y1, y2) + tolerance;
+    }
+
+    private static boolean inTriangle(double ax, double ay, double bx, double by, double cx, double cy,
+                                      double tolerance, double x, double y) {
+        double area = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+        if (area == 0) {
+            return false; // Degenerate triangle has no inside
+        }
+        // Signed distances to each edge, oriented so that inside is positive
+        double sign = Math.signum(area);
+        double d1 = sign * ((bx - ax) * (y - ay) - (by - ay) * (x - ax)) / Math.hypot(bx - ax, by - ay);
+        double d2 = sign * ((cx - bx) * (y - by) - (cy - by) * (x - bx)) / Math.hypot(cx - bx, cy - by);
+        double d3 = sign * ((ax - cx) * (y - cy) - (ay - cy) * (x - cx)) / Math.hypot(ax - cx, ay - cy);
+        return d1 >= -tolerance && d2 >= -tolerance && d3 >= -tolerance;
+    }
+
+    private static boolean inOctagon(double centerX, double centerY, double radius, double tolerance, double x, double y) {
+        double dx = x - centerX;
+        double dy = y - centerY;
+        double limit = radius * OCTAGON_APOTHEM + tolerance;
+        for (int i = 0; i < 8; i++) {
+            if (dx * OCTAGON_NORMAL_COS[i] + dy * OCTAGON_NORMAL_SIN[i] > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.imageeditorjaden;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform grid over document space that maps each cell to the ids of the shapes
+ * whose bounds touch it. Shape ids are their positions in the shape list, so a
+ * higher id is drawn on top of a lower one.
+ */
+public class ShapeIndex {
+    private static final int CELL_SIZE = 64; // Cell edge in pixels
+    private static final int MAX_CELLS_PER_SHAPE = 256; // Bigger shapes go in the oversized list
+
+    private final Map<Long, Cell> cells = new HashMap<>();
+    private final Cell oversized = new Cell(); // Shapes too large to spread across cells
+    private double[] bounds = new double[64]; // minX, minY, maxX, maxY per id
+    private int[] visited = new int[16]; // Query stamp per id, used to skip duplicates
+    private int queryStamp = 0;
+
+    /**
+     * Adds a shape to the index. Ids must be added in increasing order.
+     *
+     * @param id   The shape's position in the shape list.
+     * @param minX The left edge of the shape's bounds.
+     * @param minY The top edge of the shape's bounds.
+     * @param maxX The right edge of the shape's bounds.
+     * @param maxY The bottom edge of the shape's bounds.
+     */
+    public void insert(int id, double minX, double minY, double maxX, double maxY) {
+        ensureCapacity(id + 1);
+        bounds[id * 4] = minX;
+        bounds[id * 4 + 1] = minY;
+        bounds[id * 4 + 2] = maxX;
+        bounds[id * 4 + 3] = maxY;
+
+        int cx0 = cell(minX), cy0 = cell(minY), cx1 = cell(maxX), cy1 = cell(maxY);
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > MAX_CELLS_PER_SHAPE) {
+            oversized.add(id);
+            return;
+        }
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                cells.computeIfAbsent(key(cx, cy), k -> new Cell()).add(id);
+            }
+        }
+    }
+
+    /**
+     * Removes every shape from the index.
+     */
+    public void clear() {
+        cells.clear();
+        oversized.size = 0;
+    }
+
+    /**
+     * Finds the topmost shape under a point.
+     *
+     * @param x   The x-coordinate to test.
+     * @param y   The y-coordinate to test.
+     * @param hit Exact hit test for a candidate id whose bounds contain the point.
+     * @return The id of the topmost shape that was hit, or -1 if none.
+     */
+    public int queryPoint(double x, double y, IntPredicate hit) {
+        int best = topmostHit(cells.get(key(cell(x), cell(y))), -1, x, y, hit);
+        return topmostHit(oversized, best, x, y, hit);
+    }
+
+    /**
+     * Visits every shape whose bounds intersect a rectangle, each exactly once.
+     *
+     * @param minX    The left edge of the rectangle.
+     * @param minY    The top edge of the rectangle.
+     * @param maxX    The right edge of the rectangle.
+     * @param maxY    The bottom edge of the rectangle.
+     * @param visitor Receives the id of each intersecting shape.
+     */
+    public void queryRect(double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+        queryStamp++;
+        int cx0 = cell(minX), cy0 = cell(minY), cx1 = cell(maxX), cy1 = cell(maxY);
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > cells.size()) {
+            // A zoomed-out view spans more cells than are occupied, so walk the occupied ones instead
+            for (Cell cell : cells.values()) {
+                visitIntersecting(cell, minX, minY, maxX, maxY, visitor);
+            }
+        } else {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    visitIntersecting(cells.get(key(cx, cy)), minX, minY, maxX, maxY, visitor);
+                }
+            }
+        }
+        visitIntersecting(oversized, minX, minY, maxX, maxY, visitor);
+    }
+
+    private int topmostHit(Cell cell, int best, double x, double y, IntPredicate hit) {
+        if (cell == null) {
+            return best;
+        }
+        // Ids are stored in insertion order, so scan backwards and stop at the first hit
+        for (int i = cell.size - 1; i >= 0; i--) {
+            int id = cell.ids[i];
+            if (id <= best) {
+                break;
+            }
+            if (boundsContain(id, x, y) && hit.test(id)) {
+                return id;
+            }
+        }
+        return best;
+    }
+
+    private void visitIntersecting(Cell cell, double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+        if (cell == null) {
+            return;
+        }
+        for (int i = 0; i < cell.size; i++) {
+            int id = cell.ids[i];
+            if (visited[id] == queryStamp) {
+                continue;
+            }
+            visited[id] = queryStamp;
+            if (bounds[id * 4] <= maxX && minX <= bounds[id * 4 + 2]
+                    && bounds[id * 4 + 1] <= maxY && minY <= bounds[id * 4 + 3]) {
+                visitor.accept(id);
+            }
+        }
+    }
+
+    private boolean boundsContain(int id, double x, double y) {
+        return bounds[id * 4] <= x && x <= bounds[id * 4 + 2] && bounds[id * 4 + 1] <= y && y <= bounds[id * 4 + 3];
+    }
+
+    private void ensureCapacity(int count) {
+        if (count * 4 > bounds.length) {
+            bounds = Arrays.copyOf(bounds, Math.max(bounds.length * 2, count * 4));
+        }
+        if (count > visited.length) {
+            visited = Arrays.copyOf(visited, Math.max(visited.length * 2, count));
+        }
+    }
+
+    private static int cell(double coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private static class Cell {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.imageeditorjaden;
+
+/**
+ * Draws the shapes of a ShapeStore through a Renderer. This is the only place
+ * that knows how each kind of shape is stroked, so every backend draws them
+ * the same way. Not thread-safe: use one instance per thread.
+ */
+public class ShapeRenderer {
+    private final Renderer target;
+    private double[] pointScratchX = new double[256]; // Reused when stroking pen polylines
+    private double[] pointScratchY = new double[256];
+    private final double[] vertexX = new double[ShapeGeometry.MAX_VERTICES]; // Reused for triangle and octagon corners
+    private final double[] vertexY = new double[ShapeGeometry.MAX_VERTICES];
+    private final double[] boundsScratch = new double[4]; // Reused for level-of-detail checks
+    private final double[] dotX = new double[2], dotY = new double[2]; // Corners of a shape drawn as a dot
+
+    public ShapeRenderer(Renderer target) {
+        this.target = target;
+    }
+
+    /**
+     * Draws every shape in stacking order, each with its own color and width.
+     * Stroke color and width are only changed when they differ from the
+     * previous shape.
+     *
+     * @param shapes The shapes to draw.
+     */
+    public void drawShapes(ShapeStore shapes) {
+        drawShapes(shapes, null, shapes.size(), 0);
+    }
+
+    /**
+     * Draws some of the shapes in stacking order, e.g. those a view shows.
+     * Shapes smaller than a detail size in both directions are drawn as a
+     * filled box of their bounds, which costs the same however complex they are
+     * and looks the same at a size of a pixel or two.
+     *
+     * @param shapes     The store holding the shapes.
+     * @param ids        The ids to draw in increasing order, or null for the first count ids.
+     * @param count      The number of ids to draw.
+     * @param detailSize Shapes smaller than this are drawn as a box; 0 draws every shape in full.
+     */
+    public void drawShapes(ShapeStore shapes, int[] ids, int count, double detailSize) {
+        int lastColor = -1;
+        double lastWidth = -1;
+        for (int i = 0; i < count; i++) {
+            int id = ids == null ? i : ids[i];
+            int color = shapes.getColorIndex(id);
+            if (color != lastColor) {
+                target.setStroke(shapes.getPaletteColor(color));
+                lastColor = color;
+            }
+            double width = shapes.getWidth(id);
+            if (detailSize > 0 && drawAsDot(shapes, id, width, detailSize)) {
+                continue;
+            }
+            if (width != lastWidth) {
+                target.setLineWidth(width);
+                lastWidth = width;
+            }
+            stroke(shapes, id);
+        }
+    }
+
+    private boolean drawAsDot(ShapeStore shapes, int id, double width, double detailSize) {
+        shapes.bounds(id, boundsScratch);
+        if (boundsScratch[2] - boundsScratch[0] >= detailSize || boundsScratch[3] - boundsScratch[1] >= detailSize) {
+            return false;
+        }
+        double pad = width / 2; // The box covers what the stroke would
+        dotX[0] = boundsScratch[0] - pad;
+        dotY[0] = boundsScratch[1] - pad;
+        dotX[1] = boundsScratch[2] + pad;
+        dotY[1] = boundsScratch[3] + pad;
+        target.fillRects(dotX, dotY, 2);
+        return true;
+    }
+
+    /**
+     * Draws one shape in its own color and width.
+     *
+     * @param shapes The store holding the shape.
+     * @param id     The id of the shape.
+     */
+    public void drawShape(ShapeStore shapes, int id) {
+        target.setStroke(shapes.getColor(id));
+        target.setLineWidth(shapes.getWidth(id));
+        stroke(shapes, id);
+    }
+
+    /**
+     * Draws one shape with the renderer's current color and width: fills are
+     * filled, everything else is stroked.
+     */
+    private void stroke(ShapeStore shapes, int id) {
+        if (shapes.getKind(id) == ShapeStore.FILL) {
+            int count = copyPoints(shapes, id);
+            target.fillRects(pointScratchX, pointScratchY, count);
+        } else {
+            strokeShape(shapes, id);
+        }
+    }
+
+    /**
+     * Strokes one shape with the renderer's current color and width.
+     *
+     * @param shapes The store holding the shape.
+     * @param id     The id of the shape.
+     */
+    public void strokeShape(ShapeStore shapes, int id) {
+        byte kind = shapes.getKind(id);
+        if (kind == ShapeStore.PEN) {
+            int count = copyPoints(shapes, id);
+            target.strokePolyline(pointScratchX, pointScratchY, count);
+        } else if (kind == ShapeStore.FILL) {
+            target.strokeRect(shapes.getStartX(id), shapes.getStartY(id), shapes.getEndX(id) - shapes.getStartX(id),
+                    shapes.getEndY(id) - shapes.getStartY(id)); // Outlining every rectangle of a fill would be noise
+        } else {
+            strokeShape(kind, shapes.getStartX(id), shapes.getStartY(id), shapes.getEndX(id), shapes.getEndY(id));
+        }
+    }
+
+    private int copyPoints(ShapeStore shapes, int id) {
+        int count = shapes.getPointCount(id);
+        if (count > pointScratchX.length) {
+            pointScratchX = new double[Math.max(count, pointScratchX.length * 2)];
+            pointScratchY = new double[pointScratchX.length];
+        }
+        shapes.copyPoints(id, pointScratchX, pointScratchY);
+        return count;
+    }
+
+    /**
+     * Strokes a shape given by its kind and drag points, e.g. a preview that
+     * is not in a store yet.
+     */
+    public void strokeShape(byte kind, double startX, double startY, double endX, double endY) {
+        switch (kind) {
+            case ShapeStore.SQUARE:
+                target.strokeRect(startX, startY, endX - startX, endX - startX);
+                break;
+            case ShapeStore.CIRCLE:
+                double radius = Math.hypot(endX - startX, endY - startY);
+                target.strokeOval(startX - radius, startY - radius, radius * 2, radius * 2);
+                break;
+            case ShapeStore.RECTANGLE:
+                target.strokeRect(startX, startY, endX - startX, endY - startY);
+                break;
+            case ShapeStore.ELLIPSE:
+                target.strokeOval(startX, startY, endX - startX, endY - startY);
+                break;
+            case ShapeStore.TRIANGLE:
+            case ShapeStore.OCTAGON:
+                int count = ShapeGeometry.vertices(kind, startX, startY, endX, endY, vertexX, vertexY);
+                target.strokePolygon(vertexX, vertexY, count);
+                break;
+            // Add more shapes as needed
+        }
+    }
+}
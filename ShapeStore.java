@@ -0,0 +1,610 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.paint.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column store for the shapes in a drawing. Each shape is a row spread over
+ * parallel primitive arrays: a kind code, four coordinates, a palette index and
+ * a line width. Pen strokes keep their points in a shared coordinate pool and
+ * use the coordinate columns for their bounds. Paint bucket fills do the same
+ * with two points per rectangle of the filled region. A shape's id is its row
+ * number, which is also its stacking order.
+ */
+public class ShapeStore {
+    public static final byte NONE = -1;
+    public static final byte SQUARE = 0;
+    public static final byte CIRCLE = 1;
+    public static final byte RECTANGLE = 2;
+    public static final byte ELLIPSE = 3;
+    public static final byte TRIANGLE = 4;
+    public static final byte OCTAGON = 5;
+    public static final byte PEN = 6;
+    public static final byte FILL = 7; // Filled region, stored as rectangles in the point pool
+
+    private static final int FILE_MAGIC = 0x4A505348; // "JPSH"
+    private static final int FILE_VERSION = 1;
+
+    private static final String[] NAMES = {"square", "circle", "rectangle", "ellipse", "triangle", "octagon", "pen", "fill"};
+
+    private byte[] kinds;
+    private float[] startXs, startYs, endXs, endYs;
+    private int[] colorIndexes; // Index into the palette
+    private float[] widths; // Line width the shape was drawn with; fills ignore it
+    private int[] pointOffsets, pointCounts; // Slice of the point pool, only used by pen strokes
+    private int size;
+
+    private float[] pointXs = new float[256];
+    private float[] pointYs = new float[256];
+    private int pointSize;
+
+    private final List<Color> palette = new ArrayList<>();
+    private final Map<Color, Integer> paletteIndexes = new HashMap<>();
+
+    public ShapeStore() {
+        this(64);
+    }
+
+    public ShapeStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        kinds = new byte[capacity];
+        startXs = new float[capacity];
+        startYs = new float[capacity];
+        endXs = new float[capacity];
+        endYs = new float[capacity];
+        colorIndexes = new int[capacity];
+        widths = new float[capacity];
+        pointOffsets = new int[capacity];
+        pointCounts = new int[capacity];
+    }
+
+    /**
+     * Converts a shape name used by the toolbar into its kind code.
+     *
+     * @param name The name of the shape (e.g., "circle", "rectangle").
+     * @return The kind code, or NONE if the name is null or unknown.
+     */
+    public static byte kindOf(String name) {
+        if (name != null) {
+            for (byte kind = 0; kind < NAMES.length; kind++) {
+                if (NAMES[kind].equals(name)) {
+                    return kind;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the toolbar name of a kind code.
+     *
+     * @param kind The kind code.
+     * @return The shape name.
+     */
+    public static String nameOf(byte kind) {
+        return NAMES[kind];
+    }
+
+    /**
+     * Appends an outlined shape.
+     *
+     * @param kind   The shape's kind code.
+     * @param startX The x-coordinate where the drag started.
+     * @param startY The y-coordinate where the drag started.
+     * @param endX   The x-coordinate where the drag ended.
+     * @param endY   The y-coordinate where the drag ended.
+     * @param color  The outline color.
+     * @param width  The line width.
+     * @return The id of the new shape.
+     */
+    public int add(byte kind, double startX, double startY, double endX, double endY, Color color, double width) {
+        ensureCapacity(size + 1);
+        int id = size++;
+        kinds[id] = kind;
+        startXs[id] = (float) startX;
+        startYs[id] = (float) startY;
+        endXs[id] = (float) endX;
+        endYs[id] = (float) endY;
+        colorIndexes[id] = paletteIndex(color);
+        widths[id] = (float) width;
+        return id;
+    }
+
+    /**
+     * Appends a pen stroke, copying its points into the point pool.
+     *
+     * @param stroke The finished stroke.
+     * @param color  The stroke color.
+     * @param width  The stroke width.
+     * @return The id of the new shape.
+     */
+    public int addStroke(PenStroke stroke, Color color, double width) {
+        double[] bounds = new double[4];
+        stroke.bounds(bounds);
+        int id = add(PEN, bounds[0], bounds[1], bounds[2], bounds[3], color, width);
+
+        int count = stroke.size();
+        ensurePointCapacity(pointSize + count);
+        pointOffsets[id] = pointSize;
+        pointCounts[id] = count;
+        for (int i = 0; i < count; i++) {
+            pointXs[pointSize + i] = (float) stroke.getX(i);
+            pointYs[pointSize + i] = (float) stroke.getY(i);
+        }
+        pointSize += count;
+        return id;
+    }
+
+    /**
+     * Appends a filled region, copying its rectangles into the point pool as
+     * pairs of opposite corners.
+     *
+     * @param rects Rectangles x0, y0, x1, y1 with exclusive ends, four ints per rectangle, as made by FloodFill.
+     * @param color The fill color.
+     * @return The id of the new shape.
+     */
+    public int addFill(int[] rects, Color color) {
+        int count = rects.length / 4;
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        ensurePointCapacity(pointSize + count * 2);
+        for (int i = 0; i < count; i++) {
+            int point = pointSize + i * 2;
+            pointXs[point] = rects[i * 4];
+            pointYs[point] = rects[i * 4 + 1];
+            pointXs[point + 1] = rects[i * 4 + 2];
+            pointYs[point + 1] = rects[i * 4 + 3];
+            minX = Math.min(minX, rects[i * 4]);
+            minY = Math.min(minY, rects[i * 4 + 1]);
+            maxX = Math.max(maxX, rects[i * 4 + 2]);
+            maxY = Math.max(maxY, rects[i * 4 + 3]);
+        }
+        int id = count == 0 ? add(FILL, 0, 0, 0, 0, color, 0) : add(FILL, minX, minY, maxX, maxY, color, 0);
+        pointOffsets[id] = pointSize;
+        pointCounts[id] = count * 2;
+        pointSize += count * 2;
+        return id;
+    }
+
+    /**
+     * Removes every shape. The palette is kept since colors are usually reused.
+     */
+    public void clear() {
+        size = 0;
+        pointSize = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies the store, so its shapes can be drawn on another thread while
+     * this one keeps changing. Only the used part of each column is copied.
+     *
+     * @return An independent copy.
+     */
+    public ShapeStore copy() {
+        ShapeStore copy = new ShapeStore(size);
+        System.arraycopy(kinds, 0, copy.kinds, 0, size);
+        System.arraycopy(startXs, 0, copy.startXs, 0, size);
+        System.arraycopy(startYs, 0, copy.startYs, 0, size);
+        System.arraycopy(endXs, 0, copy.endXs, 0, size);
+        System.arraycopy(endYs, 0, copy.endYs, 0, size);
+        System.arraycopy(colorIndexes, 0, copy.colorIndexes, 0, size);
+        System.arraycopy(widths, 0, copy.widths, 0, size);
+        System.arraycopy(pointOffsets, 0, copy.pointOffsets, 0, size);
+        System.arraycopy(pointCounts, 0, copy.pointCounts, 0, size);
+        copy.size = size;
+        copy.pointXs = Arrays.copyOf(pointXs, Math.max(pointSize, 1));
+        copy.pointYs = Arrays.copyOf(pointYs, Math.max(pointSize, 1));
+        copy.pointSize = pointSize;
+        copy.palette.addAll(palette);
+        copy.paletteIndexes.putAll(paletteIndexes);
+        return copy;
+    }
+
+    public byte getKind(int id) {
+        return kinds[id];
+    }
+
+    public double getStartX(int id) {
+        return startXs[id];
+    }
+
+    public double getStartY(int id) {
+        return startYs[id];
+    }
+
+    public double getEndX(int id) {
+        return endXs[id];
+    }
+
+    public double getEndY(int id) {
+        return endYs[id];
+    }
+
+    public int getColorIndex(int id) {
+        return colorIndexes[id];
+    }
+
+    public Color getColor(int id) {
+        return palette.get(colorIndexes[id]);
+    }
+
+    public Color getPaletteColor(int index) {
+        return palette.get(index);
+    }
+
+    public int getPaletteSize() {
+        return palette.size();
+    }
+
+    public int getPointPoolSize() {
+        return pointSize;
+    }
+
+    public double getWidth(int id) {
+        return widths[id];
+    }
+
+    public int getPointCount(int id) {
+        return pointCounts[id];
+    }
+
+    /**
+     * Copies a pen stroke's points, or a fill's rectangle corners, into
+     * caller-owned buffers.
+     *
+     * @param id The id of a pen stroke or fill.
+     * @param xs Receives the x-coordinates; must hold getPointCount(id) values.
+     * @param ys Receives the y-coordinates; must hold getPointCount(id) values.
+     */
+    public void copyPoints(int id, double[] xs, double[] ys) {
+        int offset = pointOffsets[id];
+        for (int i = 0, n = pointCounts[id]; i < n; i++) {
+            xs[i] = pointXs[offset + i];
+            ys[i] = pointYs[offset + i];
+        }
+    }
+
+    /**
+     * Writes a shape's bounds into the given array.
+     *
+     * @param id  The id of the shape.
+     * @param out Receives minX, minY, maxX, maxY.
+     */
+    public void bounds(int id, double[] out) {
+        if (kinds[id] == PEN || kinds[id] == FILL) {
+            out[0] = startXs[id];
+            out[1] = startYs[id];
+            out[2] = endXs[id];
+            out[3] = endYs[id];
+        } else {
+            ShapeGeometry.bounds(kinds[id], startXs[id], startYs[id], endXs[id], endYs[id], out);
+        }
+    }
+
+    /**
+     * Tells how far a shape's stroke may reach outside its bounds: half its
+     * width for pen strokes, with their round joins, and up to five widths
+     * for outlines, whose miter joins make spikes of up to ten half widths.
+     *
+     * @param id The id of the shape.
+     * @return The distance in document units.
+     */
+    public double strokeReach(int id) {
+        if (kinds[id] == FILL) {
+            return 0;
+        }
+        return kinds[id] == PEN ? widths[id] / 2.0 : widths[id] * 5.0;
+    }
+
+    /**
+     * Tests whether a point hits a shape, its stroke width included.
+     *
+     * @param id        The id of the shape.
+     * @param tolerance Extra distance around the outline that still counts as a hit.
+     * @param x         The x-coordinate being tested.
+     * @param y         The y-coordinate being tested.
+     * @return true if the point hits the shape.
+     */
+    public boolean contains(int id, double tolerance, double x, double y) {
+        if (kinds[id] == FILL) {
+            return fillContains(id, x, y);
+        }
+        if (kinds[id] != PEN) {
+            return ShapeGeometry.contains(kinds[id], startXs[id], startYs[id], endXs[id], endYs[id],
+                    widths[id] / 2 + tolerance, x, y);
+        }
+        double distance = widths[id] / 2 + tolerance;
+        double distanceSq = distance * distance;
+        int offset = pointOffsets[id];
+        int count = pointCounts[id];
+        if (count == 1) {
+            return ShapeGeometry.segmentDistanceSq(x, y, pointXs[offset], pointYs[offset], pointXs[offset], pointYs[offset]) <= distanceSq;
+        }
+        for (int i = offset + 1; i < offset + count; i++) {
+            if (ShapeGeometry.segmentDistanceSq(x, y, pointXs[i - 1], pointYs[i - 1], pointXs[i], pointYs[i]) <= distanceSq) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean fillContains(int id, double x, double y) {
+        int end = pointOffsets[id] + pointCounts[id];
+        for (int i = pointOffsets[id]; i < end; i += 2) {
+            if (pointXs[i] <= x && x < pointXs[i + 1] && pointYs[i] <= y && y < pointYs[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the palette, one fixed-size record per shape and the point pool.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream fails.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(palette.size());
+        for (Color color : palette) {
+            out.writeInt(toArgb(color));
+        }
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            out.writeByte(kinds[id]);
+            out.writeFloat(startXs[id]);
+            out.writeFloat(startYs[id]);
+            out.writeFloat(endXs[id]);
+            out.writeFloat(endYs[id]);
+            out.writeInt(colorIndexes[id]);
+            out.writeFloat(widths[id]);
+            out.writeInt(pointOffsets[id]);
+            out.writeInt(pointCounts[id]);
+        }
+        out.writeInt(pointSize);
+        for (int i = 0; i < pointSize; i++) {
+            out.writeFloat(pointXs[i]);
+            out.writeFloat(pointYs[i]);
+        }
+    }
+
+    /**
+     * Replaces the contents of this store with shapes written by writeTo.
+     *
+     * @param in The stream to read from.
+     * @throws IOException If the stream fails or is truncated.
+     */
+    public void readFrom(DataInput in) throws IOException {
+        clear();
+        int[] paletteMap = new int[in.readInt()];
+        for (int i = 0; i < paletteMap.length; i++) {
+            paletteMap[i] = paletteIndex(fromArgb(in.readInt()));
+        }
+        int count = in.readInt();
+        ensureCapacity(count);
+        for (int id = 0; id < count; id++) {
+            kinds[id] = in.readByte();
+            startXs[id] = in.readFloat();
+            startYs[id] = in.readFloat();
+            endXs[id] = in.readFloat();
+            endYs[id] = in.readFloat();
+            colorIndexes[id] = paletteMap[in.readInt()];
+            widths[id] = in.readFloat();
+            pointOffsets[id] = in.readInt();
+            pointCounts[id] = in.readInt();
+        }
+        size = count;
+        int points = in.readInt();
+        ensurePointCapacity(points);
+        for (int i = 0; i < points; i++) {
+            pointXs[i] = in.readFloat();
+            pointYs[i] = in.readFloat();
+        }
+        pointSize = points;
+    }
+
+    /**
+     * Returns how many bytes writeColumns writes.
+     *
+     * @return The size of the column block.
+     */
+    long columnBytes() {
+        return paddedKindBytes(size) + 32L * size + 8L * pointSize;
+    }
+
+    /**
+     * Writes each column as one contiguous block: the kind codes padded to a
+     * multiple of four bytes, then the start and end coordinates, palette
+     * indexes, widths, point offsets and point counts, then the x and y
+     * columns of the point pool. readColumns can then load every column with a
+     * single bulk copy.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream fails.
+     */
+    void writeColumns(DataOutput out) throws IOException {
+        out.write(kinds, 0, size);
+        for (int i = size; i < paddedKindBytes(size); i++) {
+            out.writeByte(0);
+        }
+        writeFloats(out, startXs, size);
+        writeFloats(out, startYs, size);
+        writeFloats(out, endXs, size);
+        writeFloats(out, endYs, size);
+        writeInts(out, colorIndexes, size);
+        writeFloats(out, widths, size);
+        writeInts(out, pointOffsets, size);
+        writeInts(out, pointCounts, size);
+        writeFloats(out, pointXs, pointSize);
+        writeFloats(out, pointYs, pointSize);
+    }
+
+    /**
+     * Replaces the contents of this store with columns written by writeColumns,
+     * e.g. from a memory-mapped project file.
+     *
+     * @param in         The buffer, positioned at the column block.
+     * @param count      The number of shapes.
+     * @param points     The size of the point pool.
+     * @param colors     The palette the block's color indexes refer to.
+     */
+    void readColumns(ByteBuffer in, int count, int points, Color[] colors) {
+        clear();
+        int[] paletteMap = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            paletteMap[i] = paletteIndex(colors[i]);
+        }
+        ensureCapacity(count);
+        ensurePointCapacity(points);
+        in.get(kinds, 0, count);
+        in.position(in.position() + paddedKindBytes(count) - count);
+        readFloats(in, startXs, count);
+        readFloats(in, startYs, count);
+        readFloats(in, endXs, count);
+        readFloats(in, endYs, count);
+        readInts(in, colorIndexes, count);
+        readFloats(in, widths, count);
+        readInts(in, pointOffsets, count);
+        readInts(in, pointCounts, count);
+        readFloats(in, pointXs, points);
+        readFloats(in, pointYs, points);
+        for (int id = 0; id < count; id++) {
+            colorIndexes[id] = paletteMap[colorIndexes[id]];
+        }
+        size = count;
+        pointSize = points;
+    }
+
+    static int paddedKindBytes(int count) {
+        return (count + 3) & ~3;
+    }
+
+    private static void writeFloats(DataOutput out, float[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.writeFloat(values[i]);
+        }
+    }
+
+    private static void writeInts(DataOutput out, int[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    private static void readFloats(ByteBuffer in, float[] values, int count) {
+        in.asFloatBuffer().get(values, 0, count);
+        in.position(in.position() + count * 4);
+    }
+
+    private static void readInts(ByteBuffer in, int[] values, int count) {
+        in.asIntBuffer().get(values, 0, count);
+        in.position(in.position() + count * 4);
+    }
+
+    /**
+     * Writes the shapes to a standalone shape file, e.g. for BatchRender.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Reads a shape file written by save.
+     *
+     * @param file The file to read.
+     * @return The shapes.
+     * @throws IOException If the file cannot be read or is not a shape file.
+     */
+    public static ShapeStore load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException(file + " is not a shape file");
+            }
+            ShapeStore store = new ShapeStore();
+            store.readFrom(in);
+            return store;
+        }
+    }
+
+    /**
+     * Packs a color into a 32-bit ARGB value.
+     *
+     * @param color The color to pack.
+     * @return The ARGB value.
+     */
+    public static int toArgb(Color color) {
+        return (int) Math.round(color.getOpacity() * 255) << 24
+                | (int) Math.round(color.getRed() * 255) << 16
+                | (int) Math.round(color.getGreen() * 255) << 8
+                | (int) Math.round(color.getBlue() * 255);
+    }
+
+    /**
+     * Unpacks a 32-bit ARGB value into a color.
+     *
+     * @param argb The ARGB value.
+     * @return The color.
+     */
+    public static Color fromArgb(int argb) {
+        return Color.rgb((argb >> 16) & 0xff, (argb >> 8) & 0xff, argb & 0xff, ((argb >>> 24) & 0xff) / 255.0);
+    }
+
+    private int paletteIndex(Color color) {
+        Integer index = paletteIndexes.get(color);
+        if (index == null) {
+            index = palette.size();
+            palette.add(color);
+            paletteIndexes.put(color, index);
+        }
+        return index;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count <= kinds.length) {
+            return;
+        }
+        int capacity = Math.max(kinds.length * 2, count);
+        kinds = Arrays.copyOf(kinds, capacity);
+        startXs = Arrays.copyOf(startXs, capacity);
+        startYs = Arrays.copyOf(startYs, capacity);
+        endXs = Arrays.copyOf(endXs, capacity);
+        endYs = Arrays.copyOf(endYs, capacity);
+        colorIndexes = Arrays.copyOf(colorIndexes, capacity);
+        widths = Arrays.copyOf(widths, capacity);
+        pointOffsets = Arrays.copyOf(pointOffsets, capacity);
+        pointCounts = Arrays.copyOf(pointCounts, capacity);
+    }
+
+    private void ensurePointCapacity(int count) {
+        if (count > pointXs.length) {
+            int capacity = Math.max(pointXs.length * 2, count);
+            pointXs = Arrays.copyOf(pointXs, capacity);
+            pointYs = Arrays.copyOf(pointYs, capacity);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.paint.Color;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Renderer that writes SVG elements to a stream as shapes are drawn, so a
+ * document is exported without building a DOM. Runs of shapes with the same
+ * color and width share a group that carries those attributes, and the caps
+ * and joins come from the classes VectorExporter declares, which keeps each
+ * element short. Write failures are thrown as UncheckedIOException.
+ */
+public class SvgRenderer implements Renderer {
+    private final Writer out;
+    private Color color = Color.BLACK;
+    private double lineWidth = 1;
+    private boolean isGroupOpen = false, isGroupStale = true; // A group is opened lazily, at the next element
+
+    public SvgRenderer(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void setStroke(Color color) {
+        if (!color.equals(this.color)) {
+            this.color = color;
+            isGroupStale = true;
+        }
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        if (width != lineWidth) {
+            lineWidth = width;
+            isGroupStale = true;
+        }
+    }
+
+    @Override
+    public void strokeRect(double x, double y, double width, double height) {
+        if (width < 0 || height < 0) {
+            return; // Java2D draws nothing for these either
+        }
+        try {
+            startElement("<rect class=\"s\" x=\"");
+            VectorExporter.writeNumber(out, x);
+            out.write("\" y=\"");
+            VectorExporter.writeNumber(out, y);
+            out.write("\" width=\"");
+            VectorExporter.writeNumber(out, width);
+            out.write("\" height=\"");
+            VectorExporter.writeNumber(out, height);
+            out.write("\"/>\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void strokeOval(double x, double y, double width, double height) {
+        if (width < 0 || height < 0) {
+            return;
+        }
+        try {
+            startElement("<ellipse class=\"s\" cx=\"");
+            VectorExporter.writeNumber(out, x + width / 2);
+            out.write("\" cy=\"");
+            VectorExporter.writeNumber(out, y + height / 2);
+            out.write("\" rx=\"");
+            VectorExporter.writeNumber(out, width / 2);
+            out.write("\" ry=\"");
+            VectorExporter.writeNumber(out, height / 2);
+            out.write("\"/>\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void strokePolygon(double[] xPoints, double[] yPoints, int count) {
+        writePoints("<polygon class=\"s\" points=\"", xPoints, yPoints, count);
+    }
+
+    @Override
+    public void strokePolyline(double[] xPoints, double[] yPoints, int count) {
+        writePoints("<polyline class=\"p\" points=\"", xPoints, yPoints, count);
+    }
+
+    @Override
+    public void fillRects(double[] xPoints, double[] yPoints, int count) {
+        if (count < 2) {
+            return;
+        }
+        try {
+            // One path for all rectangles, so viewers leave no seams between them
+            startElement("<path class=\"f\" d=\"");
+            for (int i = 0; i + 1 < count; i += 2) {
+                out.write('M');
+                VectorExporter.writeNumber(out, xPoints[i]);
+                out.write(' ');
+                VectorExporter.writeNumber(out, yPoints[i]);
+                out.write('h');
+                VectorExporter.writeNumber(out, xPoints[i + 1] - xPoints[i]);
+                out.write('v');
+                VectorExporter.writeNumber(out, yPoints[i + 1] - yPoints[i]);
+                out.write('h');
+                VectorExporter.writeNumber(out, xPoints[i] - xPoints[i + 1]);
+                out.write('z');
+            }
+            out.write("\"/>\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes the open group, if any. Call after the last shape.
+     */
+    public void finish() {
+        try {
+            if (isGroupOpen) {
+                out.write("</g>\n");
+                isGroupOpen = false;
+            }
+            isGroupStale = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writePoints(String start, double[] xPoints, double[] yPoints, int count) {
+        if (count == 0) {
+            return;
+        }
+        try {
+            startElement(start);
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    out.write(' ');
+                }
+                VectorExporter.writeNumber(out, xPoints[i]);
+                out.write(',');
+                VectorExporter.writeNumber(out, yPoints[i]);
+            }
+            out.write("\"/>\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Starts an element, first opening a group for the current color and
+     * width if they changed since the last one.
+     */
+    private void startElement(String start) throws IOException {
+        if (isGroupStale) {
+            if (isGroupOpen) {
+                out.write("</g>\n");
+            }
+            out.write("<g stroke=\"");
+            writeColor(color);
+            out.write("\" fill=\"");
+            writeColor(color);
+            out.write("\" stroke-width=\"");
+            VectorExporter.writeNumber(out, lineWidth);
+            if (color.getOpacity() < 1) {
+                // Per element, not a group opacity, so overlapping shapes blend as they do on the canvas
+                out.write("\" stroke-opacity=\"");
+                VectorExporter.writeNumber(out, color.getOpacity());
+                out.write("\" fill-opacity=\"");
+                VectorExporter.writeNumber(out, color.getOpacity());
+            }
+            out.write("\">\n");
+            isGroupOpen = true;
+            isGroupStale = false;
+        }
+        out.write(start);
+    }
+
+    private void writeColor(Color color) throws IOException {
+        int rgb = (int) Math.round(color.getRed() * 255) << 16 | (int) Math.round(color.getGreen() * 255) << 8
+                | (int) Math.round(color.getBlue() * 255);
+        out.write('#');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            out.write(Character.forDigit(rgb >> shift & 0xf, 16));
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * A background image that is never decoded as a whole. The file is split into
+ * TILE_SIZE square tiles which are decoded on demand with an ImageReader source
+ * region and kept in a least-recently-used cache with a fixed byte budget, so
+ * the heap needed does not grow with the size of the image. Only the tiles that
+ * intersect the area being painted are decoded and drawn. When the view is
+ * zoomed out, tiles are decoded from a coarser level instead: a level n tile
+ * covers TILE_SIZE << n image pixels, subsampled to TILE_SIZE, so the number
+ * of tiles and pixels decoded depends on the screen and not on the image.
+ *
+ * The file is held open from open on, and tiles are decoded through that
+ * handle, so saving the document over the same file does not change the tiles
+ * still to be decoded: they keep showing the background without the shapes
+ * the save baked in. The handle is closed when the TiledImage is collected.
+ */
+public class TiledImage {
+    public static final int TILE_SIZE = 512;
+    public static final long TILING_THRESHOLD_PIXELS = 16L * 1024 * 1024; // Images larger than this are tiled
+    public static final long DEFAULT_CACHE_BYTES = 128L * 1024 * 1024; // 128 tiles of 512x512 ARGB
+    private static final int MAX_LEVEL = 6; // Coarsest level subsamples by 64, matching Viewport.MIN_SCALE
+
+    private final File file;
+    private final FileChannel source; // The file as it was when opened, even if it is replaced since
+    private final Object fileKey; // Identifies the opened file, where the platform supports it
+    private final int width, height;
+    private final long cacheBudget;
+    private long cacheBytes = 0;
+    private final LinkedHashMap<Long, WritableImage> tiles = new LinkedHashMap<>(16, 0.75f, true); // Access order
+    private int[] pixelScratch = new int[TILE_SIZE * TILE_SIZE]; // Reused when converting decoded tiles
+
+    private TiledImage(File file, FileChannel source, int width, int height, long cacheBudget) throws IOException {
+        this.file = file;
+        this.source = source;
+        this.fileKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        this.width = width;
+        this.height = height;
+        this.cacheBudget = cacheBudget;
+    }
+
+    /**
+     * Reads the dimensions of an image file and prepares it for tiled drawing.
+     * No pixels are decoded until a tile is drawn.
+     *
+     * @param file The image file.
+     * @return The tiled image.
+     * @throws IOException If the file cannot be read or has no ImageIO reader.
+     */
+    public static TiledImage open(File file) throws IOException {
+        FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            int[] size = readSize(new ChannelImageInputStream(source));
+            return new TiledImage(file, source, size[0], size[1], DEFAULT_CACHE_BYTES);
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Tells whether an image file is large enough that decoding it whole would
+     * waste memory, based on the dimensions in its header.
+     *
+     * @param file The image file.
+     * @return true if the file should be opened as a TiledImage.
+     */
+    public static boolean shouldTile(File file) {
+        try {
+            int[] size = readSize(ImageIO.createImageInputStream(file));
+            return (long) size[0] * size[1] > TILING_THRESHOLD_PIXELS;
+        } catch (IOException e) {
+            return false; // Let the regular image loader report the problem
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Tells whether the file was replaced since it was opened, e.g. by saving
+     * the document over it, so that it no longer holds these pixels. Always
+     * false where the platform cannot identify files.
+     */
+    public boolean isFileReplaced() {
+        if (fileKey == null) {
+            return false;
+        }
+        try {
+            return !fileKey.equals(Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey());
+        } catch (IOException e) {
+            return true; // Deleted or moved away
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Draws the tiles that intersect a region, at their image coordinates.
+     *
+     * @param gc   The graphics context to draw on.
+     * @param minX The left edge of the region.
+     * @param minY The top edge of the region.
+     * @param maxX The right edge of the region.
+     * @param maxY The bottom edge of the region.
+     */
+    public void draw(GraphicsContext gc, double minX, double minY, double maxX, double maxY) {
+        draw(gc, minX, minY, maxX, maxY, 1);
+    }
+
+    /**
+     * Draws the tiles that intersect a region at the coarsest level that still
+     * has at least one image pixel per screen pixel.
+     *
+     * @param gc    The graphics context to draw on, transformed to image coordinates.
+     * @param minX  The left edge of the region.
+     * @param minY  The top edge of the region.
+     * @param maxX  The right edge of the region.
+     * @param maxY  The bottom edge of the region.
+     * @param scale The screen pixels per image pixel.
+     */
+    public void draw(GraphicsContext gc, double minX, double minY, double maxX, double maxY, double scale) {
+        int level = levelFor(scale);
+        int span = TILE_SIZE << level; // Image pixels covered by one tile of this level
+        int firstColumn = Math.max(0, (int) Math.floor(minX / span));
+        int firstRow = Math.max(0, (int) Math.floor(minY / span));
+        int lastColumn = Math.min((width - 1) / span, (int) Math.ceil(maxX / span) - 1);
+        int lastRow = Math.min((height - 1) / span, (int) Math.ceil(maxY / span) - 1);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Image tile = getTile(level, column, row);
+                if (tile != null) {
+                    int x = column * span, y = row * span;
+                    gc.drawImage(tile, x, y, Math.min(span, width - x), Math.min(span, height - y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a full resolution tile, decoding it if it is not cached.
+     *
+     * @param column The tile column.
+     * @param row    The tile row.
+     * @return The tile, or null if it could not be decoded.
+     */
+    public Image getTile(int column, int row) {
+        return getTile(0, column, row);
+    }
+
+    /**
+     * Returns a tile of a level, decoding it if it is not cached.
+     *
+     * @param level  The level; tiles of level n cover TILE_SIZE << n image pixels.
+     * @param column The tile column within the level.
+     * @param row    The tile row within the level.
+     * @return The tile, or null if it could not be decoded.
+     */
+    public synchronized Image getTile(int level, int column, int row) {
+        long key = ((long) level << 56) | ((long) row << 28) | column;
+        WritableImage tile = tiles.get(key);
+        if (tile == null) {
+            try {
+                tile = decodeTile(level, column, row);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+            tiles.put(key, tile);
+            cacheBytes += tileBytes(tile);
+            evictOverBudget();
+        }
+        return tile;
+    }
+
+    public synchronized long getCachedBytes() {
+        return cacheBytes;
+    }
+
+    /**
+     * Picks the tile level for a zoom: the largest subsampling factor that is
+     * no more than one image pixel per screen pixel.
+     */
+    static int levelFor(double scale) {
+        int level = 0;
+        while (level < MAX_LEVEL && scale * (2 << level) <= 1) {
+            level++;
+        }
+        return level;
+    }
+
+    private WritableImage decodeTile(int level, int column, int row) throws IOException {
+        int span = TILE_SIZE << level;
+        int subsampling = 1 << level;
+        int x = column * span;
+        int y = row * span;
+        int regionWidth = Math.min(span, width - x);
+        int regionHeight = Math.min(span, height - y);
+
+        BufferedImage decoded;
+        try (ImageInputStream input = new ChannelImageInputStream(source)) {
+            ImageReader reader = readerFor(input);
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle(x, y, regionWidth, regionHeight));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        int tileWidth = decoded.getWidth(); // regionWidth / subsampling, rounded up
+        int tileHeight = decoded.getHeight();
+        decoded.getRGB(0, 0, tileWidth, tileHeight, pixelScratch, 0, tileWidth);
+        WritableImage tile = new WritableImage(tileWidth, tileHeight);
+        tile.getPixelWriter().setPixels(0, 0, tileWidth, tileHeight, PixelFormat.getIntArgbInstance(), pixelScratch, 0, tileWidth);
+        return tile;
+    }
+
+    private void evictOverBudget() {
+        // The newest tile is always kept so the current paint can use it
+        Iterator<Map.Entry<Long, WritableImage>> eldest = tiles.entrySet().iterator();
+        while (cacheBytes > cacheBudget && tiles.size() > 1) {
+            cacheBytes -= tileBytes(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private static long tileBytes(Image tile) {
+        return (long) tile.getWidth() * (long) tile.getHeight() * 4;
+    }
+
+    private static int[] readSize(ImageInputStream stream) throws IOException {
+        try (ImageInputStream input = stream) {
+            if (input == null) {
+                throw new IOException("Cannot read the image file");
+            }
+            ImageReader reader = readerFor(input);
+            try {
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    static ImageReader readerFor(ImageInputStream input) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("No image reader for this file");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true); // One image, metadata is not needed
+        return reader;
+    }
+
+    /**
+     * Reads the held file with positional reads, so any number of streams can
+     * share it. Closing the stream leaves the file open.
+     */
+    private static class ChannelImageInputStream extends ImageInputStreamImpl {
+        private final FileChannel channel;
+        private final ByteBuffer single = ByteBuffer.allocate(1);
+
+        ChannelImageInputStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            single.clear();
+            if (channel.read(single, streamPos) <= 0) {
+                return -1;
+            }
+            streamPos++;
+            return single.get(0) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (len == 0) {
+                return 0;
+            }
+            int count = channel.read(ByteBuffer.wrap(b, off, len), streamPos);
+            if (count <= 0) {
+                return -1;
+            }
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public long length() {
+            try {
+                return channel.size();
+            } catch (IOException e) {
+                return -1; // Unknown, as the interface allows
+            }
+        }
+    }
+}
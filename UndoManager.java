@@ -0,0 +1,258 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.image.Image;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Command log with periodic checkpoints. Every edit is appended to the log, and
+ * every CHECKPOINT_INTERVAL edits the document is captured as a compressed
+ * checkpoint held off-heap. Undo restores the nearest checkpoint at or before
+ * the target and replays at most CHECKPOINT_INTERVAL - 1 edits. When the
+ * checkpoints outgrow the memory budget the oldest ones are evicted, together
+ * with the edits that can no longer be reached without them.
+ *
+ * The budget covers the compressed shapes and the background images that
+ * checkpoints keep alive, e.g. the image from before a filter, at 4 bytes a
+ * pixel. An image is counted once however many checkpoints share it, and the
+ * image the document shows is not counted, since it is held anyway. The
+ * newest checkpoint is never evicted, since without it the current state
+ * could not be rebuilt, so a single checkpoint larger than the budget is
+ * kept anyway and the budget is exceeded by it until the next one is taken.
+ */
+public class UndoManager {
+    private static final int CHECKPOINT_INTERVAL = 64; // Edits between checkpoints
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024; // 64 MB
+
+    private final List<Edit> edits = new ArrayList<>();
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+    private int firstEdit = 0; // History position of edits.get(0)
+    private int position = 0; // Number of edits applied to the document
+    private long memoryBudget;
+    private long checkpointBytes = 0; // Compressed shapes plus each distinct image, shown one included
+    private Image shownImage; // The document's image as of the last call, not counted against the budget
+
+    public UndoManager(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Discards all history and takes the current document as the starting point.
+     *
+     * @param canvas The drawing whose state becomes the first checkpoint.
+     */
+    public void reset(DrawingCanvas canvas) {
+        edits.clear();
+        checkpoints.clear();
+        checkpointBytes = 0;
+        firstEdit = 0;
+        position = 0;
+        shownImage = canvas.getImage();
+        addCheckpoint(canvas);
+    }
+
+    /**
+     * Records an edit that has already been applied to the drawing. Any edits
+     * that were undone are discarded.
+     *
+     * @param edit   The edit that was applied.
+     * @param canvas The drawing it was applied to.
+     */
+    public void record(Edit edit, DrawingCanvas canvas) {
+        // Drop the redo tail and any checkpoints taken inside it
+        edits.subList(position - firstEdit, edits.size()).clear();
+        while (!checkpoints.isEmpty() && checkpoints.get(checkpoints.size() - 1).position > position) {
+            removeCheckpoint(checkpoints.size() - 1);
+        }
+
+        edits.add(edit);
+        position++;
+        shownImage = canvas.getImage();
+        if (checkpoints.isEmpty()) {
+            // Every checkpoint before this point was evicted, so history restarts here
+            edits.clear();
+            firstEdit = position;
+            addCheckpoint(canvas);
+        } else if (position % CHECKPOINT_INTERVAL == 0) {
+            addCheckpoint(canvas);
+        }
+    }
+
+    public boolean canUndo() {
+        return position > checkpoints.get(0).position;
+    }
+
+    public boolean canRedo() {
+        return position < firstEdit + edits.size();
+    }
+
+    /**
+     * @return The number of edits applied to the document since the last reset.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The position redoing every undone edit would reach.
+     */
+    public int getRedoLimit() {
+        return firstEdit + edits.size();
+    }
+
+    /**
+     * @return The edit redo would apply next; only valid if canRedo.
+     */
+    Edit peekRedo() {
+        return edits.get(position - firstEdit);
+    }
+
+    /**
+     * Moves the drawing back by one edit.
+     *
+     * @param canvas The drawing to rewind.
+     */
+    public void undo(DrawingCanvas canvas) {
+        if (!canUndo()) {
+            return;
+        }
+        int target = position - 1;
+        Checkpoint checkpoint = checkpoints.get(0);
+        for (Checkpoint candidate : checkpoints) {
+            if (candidate.position > target) {
+                break;
+            }
+            checkpoint = candidate;
+        }
+
+        checkpoint.restore(canvas);
+        for (int i = checkpoint.position; i < target; i++) {
+            edits.get(i - firstEdit).apply(canvas);
+        }
+        position = target;
+        shownImage = canvas.getImage();
+    }
+
+    /**
+     * Re-applies the next undone edit.
+     *
+     * @param canvas The drawing to move forward.
+     */
+    public void redo(DrawingCanvas canvas) {
+        if (canRedo()) {
+            edits.get(position - firstEdit).apply(canvas);
+            position++;
+            shownImage = canvas.getImage();
+        }
+    }
+
+    /**
+     * Sets how many bytes of compressed checkpoints and the images they keep
+     * alive may be kept. The newest checkpoint is kept even if it alone is over.
+     *
+     * @param memoryBudget The budget in bytes.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        evictOverBudget();
+    }
+
+    public long getCheckpointBytes() {
+        return checkpointBytes;
+    }
+
+    private void addCheckpoint(DrawingCanvas canvas) {
+        Checkpoint checkpoint = Checkpoint.capture(position, canvas);
+        // Images only change through edits, so checkpoints sharing an image are adjacent
+        if (checkpoints.isEmpty() || checkpoints.get(checkpoints.size() - 1).image != checkpoint.image) {
+            checkpoint.imageBytes = imageBytes(checkpoint.image);
+        }
+        checkpoints.add(checkpoint);
+        checkpointBytes += checkpoint.data.capacity() + checkpoint.imageBytes;
+        evictOverBudget();
+    }
+
+    private void removeCheckpoint(int i) {
+        Checkpoint removed = checkpoints.remove(i);
+        checkpointBytes -= removed.data.capacity();
+        if (i < checkpoints.size() && checkpoints.get(i).image == removed.image) {
+            checkpoints.get(i).imageBytes = removed.imageBytes; // The next one keeps the image alive now
+        } else {
+            checkpointBytes -= removed.imageBytes;
+        }
+    }
+
+    private void evictOverBudget() {
+        // Always keep the newest checkpoint so the current state stays reachable
+        while (budgetedBytes() > memoryBudget && checkpoints.size() > 1) {
+            removeCheckpoint(0);
+            int floor = Math.min(checkpoints.get(0).position, position);
+            edits.subList(0, floor - firstEdit).clear();
+            firstEdit = floor;
+        }
+    }
+
+    private long budgetedBytes() {
+        for (Checkpoint checkpoint : checkpoints) {
+            if (checkpoint.image == shownImage && checkpoint.imageBytes > 0) {
+                return checkpointBytes - checkpoint.imageBytes;
+            }
+        }
+        return checkpointBytes;
+    }
+
+    private static long imageBytes(Image image) {
+        return image == null ? 0 : 4L * (long) image.getWidth() * (long) image.getHeight();
+    }
+
+    /**
+     * A compressed copy of the shape store, held in a direct buffer, plus the
+     * background image at one position in the history.
+     */
+    private static class Checkpoint {
+        final int position;
+        final ByteBuffer data; // Deflated ShapeStore, off-heap
+        final Image image; // Images are immutable, so they are shared rather than copied
+        final TiledImage tiles;
+        long imageBytes = 0; // The image's size if this is the first checkpoint holding it, else 0
+
+        private Checkpoint(int position, ByteBuffer data, Image image, TiledImage tiles) {
+            this.position = position;
+            this.data = data;
+            this.image = image;
+            this.tiles = tiles;
+        }
+
+        static Checkpoint capture(int position, DrawingCanvas canvas) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+                canvas.getShapeStore().writeTo(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // In-memory streams do not fail
+            }
+            ByteBuffer data = ByteBuffer.allocateDirect(bytes.size());
+            data.put(bytes.toByteArray()).flip();
+            return new Checkpoint(position, data, canvas.getImage(), canvas.getTiledImage());
+        }
+
+        void restore(DrawingCanvas canvas) {
+            byte[] compressed = new byte[data.capacity()];
+            data.duplicate().get(compressed);
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+                canvas.getShapeStore().readFrom(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            canvas.restoreState(image, tiles);
+        }
+    }
+}
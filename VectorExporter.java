@@ -0,0 +1,258 @@
+package com.example.imageeditorjaden;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Exports a captured document as SVG or PDF straight from the shape model.
+ * Shapes are written as they are drawn, through SvgRenderer or PdfRenderer,
+ * so the output is resolution independent and never held whole in memory.
+ * The background is embedded as a lossless image: a base64 PNG in SVG, a
+ * Flate image with the PNG predictor in PDF. Both are deflated by the
+ * ImageEncoder's parallel PNG encoder, using its level and filter.
+ */
+public class VectorExporter {
+    private static final double POINTS_PER_PIXEL = 0.75; // PDF points are 1/72 inch, CSS pixels 1/96
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000};
+
+    private VectorExporter() {
+    }
+
+    /**
+     * Tells whether a format from ImageEncoder.formatOf is exported here.
+     */
+    public static boolean supports(String format) {
+        return format.equals("svg") || format.equals("pdf");
+    }
+
+    /**
+     * Exports a document to a stream. The stream is not closed.
+     *
+     * @param document The document, captured on the JavaFX thread.
+     * @param format   "svg" or "pdf".
+     * @param encoder  The settings the background image is deflated with.
+     * @param out      The stream to write to.
+     * @throws IOException If writing fails.
+     */
+    public static void export(DocumentRaster document, String format, ImageEncoder encoder, OutputStream out)
+            throws IOException {
+        try {
+            if (format.equals("svg")) {
+                writeSvg(document, encoder, out);
+            } else {
+                writePdf(document, encoder, out);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // Thrown by the renderers, which cannot throw checked exceptions
+        }
+    }
+
+    private static void writeSvg(DocumentRaster document, ImageEncoder encoder, OutputStream out) throws IOException {
+        int width = document.getWidth(), height = document.getHeight();
+        PositionStream stream = new PositionStream(out);
+        Writer svg = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+        svg.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        svg.write("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\""
+                + width + "\" height=\"" + height + "\" viewBox=\"0 0 " + width + " " + height + "\">\n");
+        // Outlines get the square caps and miter joins of JavaFX; pen strokes are round
+        svg.write("<style>.s{fill:none;stroke-linecap:square;stroke-miterlimit:10}"
+                + ".p{fill:none;stroke-linecap:round;stroke-linejoin:round}.f{stroke:none}</style>\n");
+        if (document.hasBackground()) {
+            svg.write("<image width=\"" + width + "\" height=\"" + height
+                    + "\" preserveAspectRatio=\"none\" xlink:href=\"data:image/png;base64,");
+            svg.flush();
+            try (OutputStream base64 = Base64.getEncoder().wrap(stream)) { // Closing pads, and leaves the file open
+                encoder.encodePng(document.background(), width, height, base64);
+            }
+            svg.write("\"/>\n");
+        } else {
+            svg.write("<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/>\n"); // White, like the image export
+        }
+        SvgRenderer renderer = new SvgRenderer(svg);
+        new ShapeRenderer(renderer).drawShapes(document.getShapes());
+        renderer.finish();
+        svg.write("</svg>\n");
+        svg.flush();
+    }
+
+    /**
+     * Writes a one-page PDF. Objects are numbered up front, so each can be
+     * written as soon as it is known; stream lengths follow their streams as
+     * objects of their own.
+     */
+    private static void writePdf(DocumentRaster document, ImageEncoder encoder, OutputStream out) throws IOException {
+        final int catalog = 1, pages = 2, page = 3, resources = 4, content = 5, contentLength = 6, image = 7,
+                imageLength = 8;
+        int count = document.hasBackground() ? 9 : 7; // The image objects come last, so there are no gaps
+        long[] offsets = new long[count];
+        int width = document.getWidth(), height = document.getHeight();
+        String pageWidth = number(width * POINTS_PER_PIXEL), pageHeight = number(height * POINTS_PER_PIXEL);
+        PositionStream stream = new PositionStream(out);
+        Writer pdf = new OutputStreamWriter(stream, StandardCharsets.ISO_8859_1);
+        pdf.write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n"); // The high bytes mark the file as binary
+
+        startObject(pdf, stream, offsets, catalog);
+        pdf.write("<< /Type /Catalog /Pages " + pages + " 0 R >>\nendobj\n");
+        startObject(pdf, stream, offsets, pages);
+        pdf.write("<< /Type /Pages /Kids [" + page + " 0 R] /Count 1 >>\nendobj\n");
+        startObject(pdf, stream, offsets, page);
+        pdf.write("<< /Type /Page /Parent " + pages + " 0 R /MediaBox [0 0 " + pageWidth + " " + pageHeight
+                + "] /Resources " + resources + " 0 R /Contents " + content + " 0 R >>\nendobj\n");
+
+        if (document.hasBackground()) {
+            startObject(pdf, stream, offsets, image);
+            pdf.write("<< /Type /XObject /Subtype /Image /Width " + width + " /Height " + height
+                    + " /ColorSpace /DeviceRGB /BitsPerComponent 8 /Filter /FlateDecode /DecodeParms << /Predictor 15"
+                    + " /Colors 3 /BitsPerComponent 8 /Columns " + width + " >> /Length " + imageLength
+                    + " 0 R >>\nstream\n");
+            pdf.flush();
+            long start = stream.position;
+            encoder.encodeZlib(document.background(), width, height, stream);
+            long length = stream.position - start;
+            pdf.write("\nendstream\nendobj\n");
+            startObject(pdf, stream, offsets, imageLength);
+            pdf.write(length + "\nendobj\n");
+        }
+
+        startObject(pdf, stream, offsets, content);
+        pdf.write("<< /Filter /FlateDecode /Length " + contentLength + " 0 R >>\nstream\n");
+        pdf.flush();
+        long start = stream.position;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED); // Operators are text, which even this level shrinks threefold
+        Map<Double, String> alphaStates;
+        try {
+            DeflaterOutputStream deflated = new DeflaterOutputStream(stream, deflater, 1 << 16);
+            Writer operators = new BufferedWriter(new OutputStreamWriter(deflated, StandardCharsets.ISO_8859_1), 1 << 16);
+            // Flip onto the page, so everything below is in document pixels with y going down
+            operators.write(POINTS_PER_PIXEL + " 0 0 -" + POINTS_PER_PIXEL + " 0 " + pageHeight + " cm\n");
+            if (document.hasBackground()) {
+                operators.write("q " + width + " 0 0 -" + height + " 0 " + height + " cm /Im0 Do Q\n");
+            }
+            PdfRenderer renderer = new PdfRenderer(operators);
+            new ShapeRenderer(renderer).drawShapes(document.getShapes());
+            alphaStates = renderer.getAlphaStates();
+            operators.flush();
+            deflated.finish();
+        } finally {
+            deflater.end();
+        }
+        long length = stream.position - start;
+        pdf.write("\nendstream\nendobj\n");
+        startObject(pdf, stream, offsets, contentLength);
+        pdf.write(length + "\nendobj\n");
+
+        startObject(pdf, stream, offsets, resources);
+        pdf.write("<<");
+        if (document.hasBackground()) {
+            pdf.write(" /XObject << /Im0 " + image + " 0 R >>");
+        }
+        if (!alphaStates.isEmpty()) {
+            pdf.write(" /ExtGState <<");
+            for (Map.Entry<Double, String> state : alphaStates.entrySet()) {
+                String alpha = number(state.getKey(), 3);
+                pdf.write(" /" + state.getValue() + " << /CA " + alpha + " /ca " + alpha + " >>");
+            }
+            pdf.write(" >>");
+        }
+        pdf.write(" >>\nendobj\n");
+
+        pdf.flush();
+        long xref = stream.position;
+        pdf.write("xref\n0 " + count + "\n0000000000 65535 f \n");
+        for (int i = 1; i < count; i++) {
+            pdf.write(String.format("%010d 00000 n \n", offsets[i])); // Each entry is exactly 20 bytes
+        }
+        pdf.write("trailer\n<< /Size " + count + " /Root " + catalog + " 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+        pdf.flush();
+    }
+
+    private static void startObject(Writer pdf, PositionStream stream, long[] offsets, int object) throws IOException {
+        pdf.flush();
+        offsets[object] = stream.position;
+        pdf.write(object + " 0 obj\n");
+    }
+
+    /**
+     * Writes a number with at most two decimals and no exponent, which both
+     * SVG and PDF accept, and which is finer than a pixel needs.
+     */
+    static void writeNumber(Writer out, double value) throws IOException {
+        writeNumber(out, value, 2);
+    }
+
+    /**
+     * Writes a number with at most the given number of decimals, up to 3,
+     * leaving out trailing zeros.
+     */
+    static void writeNumber(Writer out, double value, int decimals) throws IOException {
+        long scale = POWERS_OF_TEN[decimals];
+        long scaled = Math.round(value * scale);
+        if (scaled < 0) {
+            out.write('-');
+            scaled = -scaled;
+        }
+        out.write(Long.toString(scaled / scale));
+        long fraction = scaled % scale;
+        if (fraction != 0) {
+            out.write('.');
+            for (long digit = scale / 10; fraction != 0; digit /= 10) {
+                out.write((char) ('0' + fraction / digit));
+                fraction %= digit;
+            }
+        }
+    }
+
+    private static String number(double value) {
+        return number(value, 2);
+    }
+
+    private static String number(double value, int decimals) {
+        StringWriter text = new StringWriter();
+        try {
+            writeNumber(text, value, decimals);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter does not fail
+        }
+        return text.toString();
+    }
+
+    /**
+     * Counts the bytes written, for the offsets PDF needs, and leaves the
+     * target open when closed, so wrapping encoders can be closed to finish.
+     */
+    private static class PositionStream extends FilterOutputStream {
+        long position = 0;
+
+        PositionStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * The mapping between document space, where the image and shapes live, and
+ * screen space, the pixels of the canvas: screen = document * scale +
+ * translate. Zooming keeps the point under the cursor in place.
+ */
+public class Viewport {
+    public static final double MIN_SCALE = 1.0 / 64;
+    public static final double MAX_SCALE = 32;
+
+    private double scale = 1;
+    private double translateX = 0, translateY = 0; // Screen position of the document origin
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Tells whether document and screen coordinates are the same, so the
+     * canvas shows the document at 1:1 from its top-left corner.
+     *
+     * @return true if nothing is zoomed or panned.
+     */
+    public boolean isIdentity() {
+        return scale == 1 && translateX == 0 && translateY == 0;
+    }
+
+    public double toDocumentX(double screenX) {
+        return (screenX - translateX) / scale;
+    }
+
+    public double toDocumentY(double screenY) {
+        return (screenY - translateY) / scale;
+    }
+
+    public double toScreenX(double documentX) {
+        return documentX * scale + translateX;
+    }
+
+    public double toScreenY(double documentY) {
+        return documentY * scale + translateY;
+    }
+
+    /**
+     * Zooms by a factor around a screen point, which stays over the same
+     * document point. The scale is kept between MIN_SCALE and MAX_SCALE.
+     *
+     * @param factor  The change in scale, e.g. 2 to zoom in twice as far.
+     * @param screenX The x-coordinate of the fixed point on screen.
+     * @param screenY The y-coordinate of the fixed point on screen.
+     * @return true if the scale changed.
+     */
+    public boolean zoomAt(double factor, double screenX, double screenY) {
+        double newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+        if (newScale == scale) {
+            return false;
+        }
+        double documentX = toDocumentX(screenX);
+        double documentY = toDocumentY(screenY);
+        scale = newScale;
+        translateX = screenX - documentX * scale;
+        translateY = screenY - documentY * scale;
+        return true;
+    }
+
+    /**
+     * Moves the document on screen.
+     *
+     * @param dx The horizontal distance in screen pixels.
+     * @param dy The vertical distance in screen pixels.
+     */
+    public void panBy(double dx, double dy) {
+        translateX += dx;
+        translateY += dy;
+    }
+
+    /**
+     * Shows the document at 1:1 from its top-left corner again.
+     */
+    public void reset() {
+        scale = 1;
+        translateX = 0;
+        translateY = 0;
+    }
+
+    /**
+     * Computes the part of the document that a screen area shows.
+     *
+     * @param width  The width of the screen area.
+     * @param height The height of the screen area.
+     * @param out    Receives minX, minY, maxX, maxY in document coordinates.
+     */
+    public void visibleBounds(double width, double height, double[] out) {
+        out[0] = toDocumentX(0);
+        out[1] = toDocumentY(0);
+        out[2] = toDocumentX(width);
+        out[3] = toDocumentY(height);
+    }
+
+    /**
+     * Sets a graphics context to draw document coordinates at their place on screen.
+     *
+     * @param gc The graphics context.
+     */
+    public void apply(GraphicsContext gc) {
+        gc.setTransform(scale, 0, 0, scale, translateX, translateY);
+    }
+}
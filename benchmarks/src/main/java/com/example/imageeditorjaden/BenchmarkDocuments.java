@@ -0,0 +1,68 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.paint.Color;
+import java.util.Random;
+
+/**
+ * Builds reproducible documents for the benchmarks: a mix of every shape kind
+ * and pen strokes spread over a 4K canvas, from a fixed seed.
+ */
+final class BenchmarkDocuments {
+    static final int WIDTH = 3840;
+    static final int HEIGHT = 2160;
+    static final double HIT_TOLERANCE = 3; // Same as DrawingCanvas
+
+    private static final Color[] COLORS = {Color.BLACK, Color.RED, Color.BLUE, Color.GREEN, Color.ORANGE,
+            Color.PURPLE, Color.GRAY, Color.BROWN};
+
+    private BenchmarkDocuments() {
+    }
+
+    /**
+     * Creates a document with shapes of every kind. One in ten is a pen stroke.
+     *
+     * @param count The number of shapes.
+     * @param seed  The random seed.
+     * @return The shapes.
+     */
+    static ShapeStore shapes(int count, long seed) {
+        Random random = new Random(seed);
+        ShapeStore shapes = new ShapeStore(count);
+        for (int i = 0; i < count; i++) {
+            double x = random.nextDouble() * WIDTH;
+            double y = random.nextDouble() * HEIGHT;
+            Color color = COLORS[random.nextInt(COLORS.length)];
+            if (i % 10 == 9) {
+                PenStroke stroke = new PenStroke();
+                for (int p = 0; p < 20; p++) {
+                    x += random.nextGaussian() * 8;
+                    y += random.nextGaussian() * 8;
+                    stroke.add(x, y);
+                }
+                shapes.addStroke(stroke, color, 1 + random.nextInt(8));
+            } else {
+                byte kind = (byte) random.nextInt(ShapeStore.PEN); // Every kind but pen
+                double size = 8 + random.nextDouble() * 120;
+                shapes.add(kind, x, y, x + size, y + size * (0.5 + random.nextDouble()), color, 2);
+            }
+        }
+        return shapes;
+    }
+
+    /**
+     * Indexes every shape the way DrawingCanvas does.
+     *
+     * @param shapes The shapes to index.
+     * @return The index.
+     */
+    static ShapeIndex index(ShapeStore shapes) {
+        ShapeIndex index = new ShapeIndex();
+        double[] bounds = new double[4];
+        for (int id = 0; id < shapes.size(); id++) {
+            shapes.bounds(id, bounds);
+            double pad = HIT_TOLERANCE + (shapes.getKind(id) == ShapeStore.PEN ? shapes.getWidth(id) / 2 : 0);
+            index.insert(id, bounds[0] - pad, bounds[1] - pad, bounds[2] + pad, bounds[3] + pad);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.imageeditorjaden;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the JMH benchmarks and, unless told otherwise, writes the results as
+ * JSON to jmh-result.json so runs of different versions can be compared.
+ * Any JMH option can be passed, e.g. a benchmark name pattern or -p shapeCount=1000.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.addAll(Arrays.asList("-rf", "json", "-rff", "jmh-result.json"));
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.imageeditorjaden;
+
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Renderer that rasterizes nothing and hands every argument to a Blackhole,
+ * so benchmarks measure the cost of walking the shape model and generating
+ * geometry without the cost of any backend.
+ */
+class BlackholeRenderer implements Renderer {
+    private final Blackhole blackhole;
+
+    BlackholeRenderer(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void setStroke(Color color) {
+        blackhole.consume(color);
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        blackhole.consume(width);
+    }
+
+    @Override
+    public void strokeRect(double x, double y, double width, double height) {
+        blackhole.consume(x + y + width + height);
+    }
+
+    @Override
+    public void strokeOval(double x, double y, double width, double height) {
+        blackhole.consume(x + y + width + height);
+    }
+
+    @Override
+    public void strokePolygon(double[] xPoints, double[] yPoints, int count) {
+        blackhole.consume(xPoints);
+        blackhole.consume(yPoints);
+        blackhole.consume(count);
+    }
+
+    @Override
+    public void strokePolyline(double[] xPoints, double[] yPoints, int count) {
+        blackhole.consume(xPoints);
+        blackhole.consume(yPoints);
+        blackhole.consume(count);
+    }
+
+    @Override
+    public void fillRects(double[] xPoints, double[] yPoints, int count) {
+        blackhole.consume(xPoints);
+        blackhole.consume(yPoints);
+        blackhole.consume(count);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.imageeditorjaden;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding a saved canvas, as ImageSaver does off the JavaFX thread: the
+ * grabbed ARGB pixels are encoded to a stream that only counts bytes, so disk
+ * speed does not enter the result. The canvas holds a gradient with shapes
+ * drawn on it, which compresses like a real drawing. "imageio" is the plain
+ * ImageIO writer with its defaults, "encoder" the ImageEncoder that saves use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class EncodeBenchmark {
+    @Param({"3840x2160", "15360x8640"})
+    String size;
+
+    @Param({"png", "jpg"})
+    String format;
+
+    @Param({"imageio", "encoder"})
+    String writer;
+
+    private int width, height;
+    private int[] pixels;
+    private BufferedImage image;
+    private final ImageEncoder encoder = ImageEncoder.defaults();
+
+    @Setup
+    public void setUp() {
+        ImageIO.setUseCache(false); // Encode in memory like ImageSaver's temp file write, minus the disk
+        width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+        height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+        pixels = new int[width * height];
+        BufferedImage argb = ImageSaver.wrap(pixels, width, height);
+        Graphics2D g = argb.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.WHITE, width, height, new Color(40, 90, 160)));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        Java2DRenderer.renderInto(argb, BenchmarkDocuments.shapes(10_000, 42), null);
+
+        // JPEG has no alpha channel, so it gets an RGB view of the same pixels
+        image = format.equals("png") ? argb : ImageEncoder.wrapRgb(pixels, width, height);
+    }
+
+    @Benchmark
+    public long encode() throws IOException {
+        CountingStream out = new CountingStream();
+        if (writer.equals("encoder")) {
+            encoder.encode(pixels, width, height, format, out);
+        } else if (!ImageIO.write(image, format, out)) {
+            throw new IOException("No writer for " + format);
+        }
+        return out.count;
+    }
+
+    static class CountingStream extends OutputStream { // Shared with ExportBenchmark
+        long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
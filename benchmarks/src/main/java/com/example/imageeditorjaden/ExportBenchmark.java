@@ -0,0 +1,55 @@
+package com.example.imageeditorjaden;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Exporting an annotation-only document, as ImageSaver does for each format:
+ * "png" renders the shapes band by band and encodes the pixels, "svg" and
+ * "pdf" write the shape model as vectors. The stream only counts bytes, and
+ * the count is returned so the result shows the file size next to the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ExportBenchmark {
+    @Param({"1000", "10000"})
+    int shapeCount;
+
+    @Param({"png", "svg", "pdf"})
+    String format;
+
+    private DocumentRaster document;
+    private final ImageEncoder encoder = ImageEncoder.defaults();
+
+    @Setup
+    public void setUp() {
+        document = DocumentRaster.capture(BenchmarkDocuments.shapes(shapeCount, 42), null, null,
+                BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT);
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        EncodeBenchmark.CountingStream out = new EncodeBenchmark.CountingStream();
+        if (VectorExporter.supports(format)) {
+            VectorExporter.export(document, format, encoder, out);
+        } else {
+            encoder.encode(document, document.getWidth(), document.getHeight(), format, out);
+        }
+        return out.count;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.imageeditorjaden;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The pixel filters on a 50 megapixel ARGB buffer, run in place on the common
+ * fork-join pool as Image Options does. Each call filters the previous
+ * result, which costs the same as filtering the original.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilterBenchmark {
+    private static final int WIDTH = 8192;
+    private static final int HEIGHT = 6144;
+
+    @Param({"grayscale", "brightnessContrast", "boxBlur", "gaussianBlur", "sharpen"})
+    String filter;
+
+    private PixelFilter pixelFilter;
+    private int[] pixels;
+    private int[] scratch;
+
+    @Setup
+    public void setUp() {
+        switch (filter) {
+            case "grayscale":
+                pixelFilter = PixelFilter.grayscale();
+                break;
+            case "brightnessContrast":
+                pixelFilter = PixelFilter.brightnessContrast(0.1, 1.2);
+                break;
+            case "boxBlur":
+                pixelFilter = PixelFilter.boxBlur(10);
+                break;
+            case "gaussianBlur":
+                pixelFilter = PixelFilter.gaussianBlur(10);
+                break;
+            default:
+                pixelFilter = PixelFilter.sharpen(2, 1);
+        }
+        Random random = new Random(42);
+        pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        scratch = new int[pixels.length];
+    }
+
+    @Benchmark
+    public int[] apply() {
+        pixelFilter.apply(pixels, WIDTH, HEIGHT, scratch);
+        return pixels;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.imageeditorjaden;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Vertex generation for the polygon shapes, which runs for every octagon and
+ * triangle on every redraw and preview frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+    private ShapeRenderer renderer;
+    private double offset = 0; // Changes every call so nothing is constant-folded
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        renderer = new ShapeRenderer(new BlackholeRenderer(blackhole));
+    }
+
+    @Benchmark
+    public void octagon() {
+        offset = (offset + 1) % 100;
+        renderer.strokeShape(ShapeStore.OCTAGON, 100 + offset, 100, 180, 160 + offset);
+    }
+
+    @Benchmark
+    public void triangle() {
+        offset = (offset + 1) % 100;
+        renderer.strokeShape(ShapeStore.TRIANGLE, 100 + offset, 100, 180, 160 + offset);
+    }
+}
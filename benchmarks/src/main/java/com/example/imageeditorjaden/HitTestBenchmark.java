@@ -0,0 +1,67 @@
+package com.example.imageeditorjaden;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Topmost-shape hit testing as done by updateSelection on every drag event,
+ * through the grid index and, for comparison, by testing every shape.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HitTestBenchmark {
+    private static final int POINTS = 1024; // Power of two so the next point is picked with a mask
+
+    @Param({"1000", "10000", "100000"})
+    int shapeCount;
+
+    private ShapeStore shapes;
+    private ShapeIndex index;
+    private final double[] xs = new double[POINTS];
+    private final double[] ys = new double[POINTS];
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        shapes = BenchmarkDocuments.shapes(shapeCount, 42);
+        index = BenchmarkDocuments.index(shapes);
+        Random random = new Random(7);
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = random.nextDouble() * BenchmarkDocuments.WIDTH;
+            ys[i] = random.nextDouble() * BenchmarkDocuments.HEIGHT;
+        }
+    }
+
+    @Benchmark
+    public int indexedHitTest() {
+        int i = next++ & (POINTS - 1);
+        double x = xs[i], y = ys[i];
+        return index.queryPoint(x, y, id -> shapes.contains(id, BenchmarkDocuments.HIT_TOLERANCE, x, y));
+    }
+
+    @Benchmark
+    public int linearHitTest() {
+        int i = next++ & (POINTS - 1);
+        for (int id = shapes.size() - 1; id >= 0; id--) {
+            if (shapes.contains(id, BenchmarkDocuments.HIT_TOLERANCE, xs[i], ys[i])) {
+                return id;
+            }
+        }
+        return -1;
+    }
+}
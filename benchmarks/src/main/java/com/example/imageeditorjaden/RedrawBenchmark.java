@@ -0,0 +1,65 @@
+package com.example.imageeditorjaden;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Full redraw of every committed shape, as redrawShapes does when the
+ * committed layer is rebuilt. The JavaFX canvas needs a display, so the
+ * redraw goes through the same ShapeRenderer with the Java2D backend, and
+ * once more with a backend that draws nothing to isolate the model walk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedrawBenchmark {
+    @Param({"1000", "10000", "100000"})
+    int shapeCount;
+
+    private ShapeStore shapes;
+    private Graphics2D graphics;
+    private ShapeRenderer java2d;
+    private ShapeRenderer modelOnly;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        shapes = BenchmarkDocuments.shapes(shapeCount, 42);
+        BufferedImage target = new BufferedImage(BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT,
+                BufferedImage.TYPE_INT_ARGB);
+        graphics = target.createGraphics();
+        java2d = new ShapeRenderer(new Java2DRenderer(graphics));
+        modelOnly = new ShapeRenderer(new BlackholeRenderer(blackhole));
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public void redrawJava2D() {
+        java2d.drawShapes(shapes);
+    }
+
+    @Benchmark
+    public void redrawModelOnly() {
+        modelOnly.drawShapes(shapes);
+    }
+}
@@ -2,7 +2,11 @@ package com.example.imageeditorjaden;
 
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import java.io.File;
@@ -14,37 +18,44 @@ public class buttonClass {
     private Button clearButton;
     private Button saveButton;
     private Button saveAsButton;
+    private Button exportShapesButton; // Saves the shapes for batch rendering
+    private Button openProjectButton;
+    private Button saveProjectButton;
     private Button optionsButton;
     private Button lineOptionsButton;
     private Button helpButton;
     private Button insertShapesButton;
     private Button penButton; // New Pen button
-    private Button undoButton; // Empty Undo button
+    private Button undoButton; // Undo button
+    private Button redoButton; // Redo button
     private Button selectButton; // New Select button
     private HBox shapeButtonsBox;
     private String currentShape;
     private HBox lineOptionsHBox;
+    private VBox imageOptionsBox; // Filters and transforms applied to the background image
     private HBox buttonBox;
     private boolean isPenActive = false; // Track pen state
     private boolean isSelectActive = false; // Track select state
+    private ImageEncoder encoder = ImageEncoder.defaults(); // Export settings from Image Options
     private openImage mainApp; // Reference to main openImage class
     private Button toggleTimerButton;
+    private Button toggleHudButton;
 
     /**
      * Initializes a new buttonClass instance, setting up buttons and their actions
      *
-     * @param drawingCanvas
      * @param primaryStage
      * @param lineOptionsHBox
      * @param buttonBox
      * @param mainApp
      */
-    public buttonClass(DrawingCanvas drawingCanvas, Stage primaryStage, HBox lineOptionsHBox, HBox buttonBox, openImage mainApp) {
+    public buttonClass(Stage primaryStage, HBox lineOptionsHBox, HBox buttonBox, openImage mainApp) {
         this.lineOptionsHBox = lineOptionsHBox;
         this.buttonBox = buttonBox;
         this.mainApp = mainApp; // Store reference to main class
-        initializeButtons(drawingCanvas, primaryStage);
+        initializeButtons(primaryStage);
         createToggleTimerButton();
+        createToggleHudButton();
     }
 
     private void createToggleTimerButton() {
@@ -55,46 +66,88 @@ public class buttonClass {
         buttonBox.getChildren().add(toggleTimerButton);
     }
 
-    private void initializeButtons(DrawingCanvas drawingCanvas, Stage primaryStage) {
+    private void createToggleHudButton() {
+        toggleHudButton = new Button("Toggle HUD");
+        toggleHudButton.setOnAction(e -> mainApp.setHudVisibility()); // Frame times and hot-path statistics
+        buttonBox.getChildren().add(toggleHudButton);
+    }
+
+    private void initializeButtons(Stage primaryStage) {
         openButton = new Button("Open Image");
         clearButton = new Button("Clear Screen");
         saveButton = new Button("Save Image");
         saveAsButton = new Button("Save Image As");
+        exportShapesButton = new Button("Export Shapes");
+        openProjectButton = new Button("Open Project");
+        saveProjectButton = new Button("Save Project");
         optionsButton = new Button("Image Options");
         lineOptionsButton = new Button("Line Options");
         helpButton = new Button("Help");
         insertShapesButton = new Button("Insert Shapes");
 
         penButton = new Button("Pen");
-        penButton.setOnAction(e -> togglePen(drawingCanvas));
+        penButton.setOnAction(e -> togglePen(canvas()));
 
         selectButton = new Button("Select");
-        selectButton.setOnAction(e -> toggleSelect(drawingCanvas));
+        selectButton.setOnAction(e -> toggleSelect(canvas()));
 
         undoButton = new Button("Undo");
+        undoButton.setOnAction(e -> canvas().undo());
+
+        redoButton = new Button("Redo");
+        redoButton.setOnAction(e -> canvas().redo());
+
+        // The wheel zooms at the cursor and the right or middle button pans; these zoom at the center
+        Button zoomInButton = new Button("Zoom In");
+        zoomInButton.setOnAction(e -> canvas().zoomIn());
+        Button zoomOutButton = new Button("Zoom Out");
+        zoomOutButton.setOnAction(e -> canvas().zoomOut());
+        Button actualSizeButton = new Button("Actual Size");
+        actualSizeButton.setOnAction(e -> canvas().resetView());
 
         shapeButtonsBox = new HBox(10);
-        createShapeButtons(drawingCanvas);
+        createShapeButtons();
+        createImageOptions();
 
         // Set button actions
-        openButton.setOnAction(e -> openImage(drawingCanvas, primaryStage));
-        clearButton.setOnAction(e -> clearCanvas(drawingCanvas));
-        saveButton.setOnAction(e -> {
-            saveImage(drawingCanvas);
-            mainApp.resetTimer(); // Ensure resetTimer() is public in openImage
-        });
-        saveAsButton.setOnAction(e -> saveImageAs(drawingCanvas, primaryStage));
+        openButton.setOnAction(e -> openImage(canvas(), primaryStage));
+        clearButton.setOnAction(e -> clearCanvas(canvas()));
+        saveButton.setOnAction(e -> saveImage(canvas()));
+        saveAsButton.setOnAction(e -> saveImageAs(primaryStage));
+        exportShapesButton.setOnAction(e -> exportShapes(canvas(), primaryStage));
+        openProjectButton.setOnAction(e -> openProject(primaryStage));
+        saveProjectButton.setOnAction(e -> saveProject(canvas(), primaryStage));
         optionsButton.setOnAction(e -> toggleImageOptions());
         lineOptionsButton.setOnAction(e -> toggleLineOptions());
         insertShapesButton.setOnAction(e -> toggleShapeButtons());
         helpButton.setOnAction(e -> showHelpDialog());
 
-        buttonBox.getChildren().addAll(openButton, clearButton, saveButton, saveAsButton, optionsButton,
+        buttonBox.getChildren().addAll(openButton, openProjectButton, clearButton, saveButton, saveAsButton,
+                saveProjectButton, exportShapesButton, optionsButton,
                 lineOptionsButton, helpButton, insertShapesButton, penButton,
-                selectButton, undoButton, shapeButtonsBox);
+                selectButton, undoButton, redoButton, zoomInButton, zoomOutButton, actualSizeButton, shapeButtonsBox);
         shapeButtonsBox.setVisible(false);
     }
 
+    /**
+     * The drawing of the tab that is shown; buttons act on whichever tab that is.
+     */
+    private DrawingCanvas canvas() {
+        return mainApp.getDrawingCanvas();
+    }
+
+    /**
+     * Carries the selected tool over to a document when its tab is shown.
+     *
+     * @param drawingCanvas The drawing canvas of the tab being shown.
+     */
+    public void applyTools(DrawingCanvas drawingCanvas) {
+        drawingCanvas.setShape(isPenActive || isSelectActive ? null : currentShape);
+        drawingCanvas.setPenActive(isPenActive);
+        drawingCanvas.setSelectActive(isSelectActive);
+        drawingCanvas.setEncoder(encoder);
+    }
+
     private void togglePen(DrawingCanvas drawingCanvas) {
         isPenActive = !isPenActive;
         drawingCanvas.setPenActive(isPenActive);
@@ -121,22 +174,25 @@ public class buttonClass {
         }
     }
 
-    private void createShapeButtons(DrawingCanvas drawingCanvas) {
+    private void createShapeButtons() {
         Button squareButton = new Button("Square");
         Button circleButton = new Button("Circle");
         Button rectangleButton = new Button("Rectangle");
         Button ellipseButton = new Button("Ellipse");
         Button triangleButton = new Button("Triangle");
         Button octagonButton = new Button("Octagon");
-
-        squareButton.setOnAction(e -> setShapeAndToggle("square", drawingCanvas));
-        circleButton.setOnAction(e -> setShapeAndToggle("circle", drawingCanvas));
-        rectangleButton.setOnAction(e -> setShapeAndToggle("rectangle", drawingCanvas));
-        ellipseButton.setOnAction(e -> setShapeAndToggle("ellipse", drawingCanvas));
-        triangleButton.setOnAction(e -> setShapeAndToggle("triangle", drawingCanvas));
-        octagonButton.setOnAction(e -> setShapeAndToggle("octagon", drawingCanvas));
-
-        shapeButtonsBox.getChildren().addAll(squareButton, circleButton, rectangleButton, ellipseButton, triangleButton, octagonButton);
+        Button fillButton = new Button("Fill"); // Paint bucket
+
+        squareButton.setOnAction(e -> setShapeAndToggle("square", canvas()));
+        circleButton.setOnAction(e -> setShapeAndToggle("circle", canvas()));
+        rectangleButton.setOnAction(e -> setShapeAndToggle("rectangle", canvas()));
+        ellipseButton.setOnAction(e -> setShapeAndToggle("ellipse", canvas()));
+        triangleButton.setOnAction(e -> setShapeAndToggle("triangle", canvas()));
+        octagonButton.setOnAction(e -> setShapeAndToggle("octagon", canvas()));
+        fillButton.setOnAction(e -> setShapeAndToggle("fill", canvas()));
+
+        shapeButtonsBox.getChildren().addAll(squareButton, circleButton, rectangleButton, ellipseButton, triangleButton, octagonButton,
+                fillButton);
     }
 
     /**
@@ -150,8 +206,7 @@ public class buttonClass {
         fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Image Files", "*.png", "*.jpg", "*.gif"));
         File file = fileChooser.showOpenDialog(primaryStage);
         if (file != null) {
-            mainApp.setOriginalFile(file); // Set original file in main app
-            drawingCanvas.setImage(new javafx.scene.image.Image(file.toURI().toString()));
+            mainApp.openFile(file); // Sets the original file and image in the main app
         }
     }
 
@@ -170,13 +225,15 @@ public class buttonClass {
         }
     }
 
-    private void saveImageAs(DrawingCanvas drawingCanvas, Stage primaryStage) {
+    private void saveImageAs(Stage primaryStage) {
         FileChooser fileChooser = new FileChooser();
         // Add multiple file format options
         fileChooser.getExtensionFilters().addAll(
                 new FileChooser.ExtensionFilter("PNG Files", "*.png"),
                 new FileChooser.ExtensionFilter("JPG Files", "*.jpg"),
-                new FileChooser.ExtensionFilter("GIF Files", "*.gif")
+                new FileChooser.ExtensionFilter("GIF Files", "*.gif"),
+                new FileChooser.ExtensionFilter("SVG Files", "*.svg"),
+                new FileChooser.ExtensionFilter("PDF Files", "*.pdf")
         );
         File file = fileChooser.showSaveDialog(primaryStage);
 
@@ -184,8 +241,62 @@ public class buttonClass {
             // Check for potential data loss
             boolean shouldProceed = showDataLossWarning(file);
             if (shouldProceed) {
-                drawingCanvas.saveImage(file); // Save to the chosen file
-                mainApp.setOriginalFile(file); // Update original file reference
+                mainApp.saveImageAs(file); // Saves to the chosen file, which becomes the original once written
+            }
+        }
+    }
+
+    private void openProject(Stage primaryStage) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Project Files", "*.jproj"));
+        File file = fileChooser.showOpenDialog(primaryStage);
+        if (file != null) {
+            mainApp.openProject(file);
+        }
+    }
+
+    /**
+     * Saves the drawing as a project, keeping its shapes editable.
+     *
+     * @param drawingCanvas The drawing canvas to save.
+     * @param primaryStage The primary stage of the application.
+     */
+    private void saveProject(DrawingCanvas drawingCanvas, Stage primaryStage) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Project Files", "*.jproj"));
+        File file = fileChooser.showSaveDialog(primaryStage);
+        if (file != null) {
+            try {
+                drawingCanvas.saveProject(file);
+            } catch (java.io.IOException ex) {
+                javafx.scene.control.Alert alert = new javafx.scene.control.Alert(javafx.scene.control.Alert.AlertType.ERROR);
+                alert.setTitle("Save Project");
+                alert.setHeaderText(null);
+                alert.setContentText("Failed to save project: " + ex.getMessage());
+                alert.showAndWait();
+            }
+        }
+    }
+
+    /**
+     * Saves the shapes on the canvas to a shape file for the batch renderer.
+     *
+     * @param drawingCanvas The drawing canvas whose shapes are exported.
+     * @param primaryStage The primary stage of the application.
+     */
+    private void exportShapes(DrawingCanvas drawingCanvas, Stage primaryStage) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Shape Files", "*.shapes"));
+        File file = fileChooser.showSaveDialog(primaryStage);
+        if (file != null) {
+            try {
+                drawingCanvas.saveShapes(file);
+            } catch (java.io.IOException ex) {
+                javafx.scene.control.Alert alert = new javafx.scene.control.Alert(javafx.scene.control.Alert.AlertType.ERROR);
+                alert.setTitle("Export Shapes");
+                alert.setHeaderText(null);
+                alert.setContentText("Failed to export shapes: " + ex.getMessage());
+                alert.showAndWait();
             }
         }
     }
@@ -216,9 +327,115 @@ public class buttonClass {
         }
         return ""; // No extension found
     }
+    /**
+     * Builds the rows of filters and transforms shown by Image Options. The
+     * radius slider is shared by the blurs and sharpen. Each acts on the
+     * document shown when it is pressed.
+     */
+    private void createImageOptions() {
+        Button grayscaleButton = new Button("Grayscale");
+        grayscaleButton.setOnAction(e -> applyFilter(canvas(), PixelFilter.grayscale()));
+        Button invertButton = new Button("Invert");
+        invertButton.setOnAction(e -> applyFilter(canvas(), PixelFilter.invert()));
+
+        Slider radiusSlider = new Slider(1, 50, 3);
+        radiusSlider.setShowTickLabels(true);
+        radiusSlider.setMajorTickUnit(10);
+        Button boxBlurButton = new Button("Box Blur");
+        boxBlurButton.setOnAction(e -> applyFilter(canvas(), PixelFilter.boxBlur((int) radiusSlider.getValue())));
+        Button gaussianBlurButton = new Button("Gaussian Blur");
+        gaussianBlurButton.setOnAction(e -> applyFilter(canvas(), PixelFilter.gaussianBlur(radiusSlider.getValue())));
+        Button sharpenButton = new Button("Sharpen");
+        sharpenButton.setOnAction(e -> applyFilter(canvas(), PixelFilter.sharpen((int) radiusSlider.getValue(), 1)));
+
+        Slider brightnessSlider = new Slider(-1, 1, 0);
+        Slider contrastSlider = new Slider(0, 3, 1);
+        Button brightnessContrastButton = new Button("Apply Brightness/Contrast");
+        brightnessContrastButton.setOnAction(e -> applyFilter(canvas(),
+                PixelFilter.brightnessContrast(brightnessSlider.getValue(), contrastSlider.getValue())));
+
+        HBox filterRow = new HBox(10);
+        filterRow.getChildren().addAll(grayscaleButton, invertButton, new Label("Radius"), radiusSlider,
+                boxBlurButton, gaussianBlurButton, sharpenButton, new Label("Brightness"), brightnessSlider,
+                new Label("Contrast"), contrastSlider, brightnessContrastButton);
+
+        Button rotateLeftButton = new Button("Rotate Left");
+        rotateLeftButton.setOnAction(e -> applyTransform(canvas(), ImageTransform.rotate(-90)));
+        Button rotateRightButton = new Button("Rotate Right");
+        rotateRightButton.setOnAction(e -> applyTransform(canvas(), ImageTransform.rotate(90)));
+        Button rotate180Button = new Button("Rotate 180");
+        rotate180Button.setOnAction(e -> applyTransform(canvas(), ImageTransform.rotate(180)));
+        Button flipHorizontalButton = new Button("Flip Horizontal");
+        flipHorizontalButton.setOnAction(e -> applyTransform(canvas(), ImageTransform.flipHorizontal()));
+        Button flipVerticalButton = new Button("Flip Vertical");
+        flipVerticalButton.setOnAction(e -> applyTransform(canvas(), ImageTransform.flipVertical()));
+        Slider angleSlider = new Slider(-180, 180, 0);
+        angleSlider.setShowTickLabels(true);
+        angleSlider.setMajorTickUnit(45);
+        Button rotateByAngleButton = new Button("Rotate by Angle");
+        rotateByAngleButton.setOnAction(e -> applyTransform(canvas(), ImageTransform.rotate(angleSlider.getValue())));
+
+        HBox transformRow = new HBox(10);
+        transformRow.getChildren().addAll(rotateLeftButton, rotateRightButton, rotate180Button, flipHorizontalButton,
+                flipVerticalButton, new Label("Angle"), angleSlider, rotateByAngleButton);
+
+        // Compression used when saving; the format follows the file extension
+        Slider pngLevelSlider = new Slider(0, 9, ImageEncoder.DEFAULT_PNG_LEVEL);
+        pngLevelSlider.setShowTickLabels(true);
+        pngLevelSlider.setMajorTickUnit(1);
+        pngLevelSlider.setMinorTickCount(0);
+        pngLevelSlider.setSnapToTicks(true);
+        ChoiceBox<ImageEncoder.PngFilter> pngFilterChoice = new ChoiceBox<>();
+        pngFilterChoice.getItems().addAll(ImageEncoder.PngFilter.values());
+        pngFilterChoice.setValue(ImageEncoder.PngFilter.ADAPTIVE);
+        Slider jpgQualitySlider = new Slider(0, 100, ImageEncoder.DEFAULT_JPG_QUALITY * 100);
+        jpgQualitySlider.setShowTickLabels(true);
+        jpgQualitySlider.setMajorTickUnit(25);
+        Runnable updateEncoder = () -> {
+            encoder = new ImageEncoder((int) Math.round(pngLevelSlider.getValue()), pngFilterChoice.getValue(),
+                    (float) (jpgQualitySlider.getValue() / 100));
+            canvas().setEncoder(encoder);
+        };
+        pngLevelSlider.valueProperty().addListener((obs, oldVal, newVal) -> updateEncoder.run());
+        pngFilterChoice.valueProperty().addListener((obs, oldVal, newVal) -> updateEncoder.run());
+        jpgQualitySlider.valueProperty().addListener((obs, oldVal, newVal) -> updateEncoder.run());
+
+        HBox exportRow = new HBox(10);
+        exportRow.getChildren().addAll(new Label("PNG Level"), pngLevelSlider, new Label("PNG Filter"), pngFilterChoice,
+                new Label("JPG Quality"), jpgQualitySlider);
+
+        imageOptionsBox = new VBox(10, filterRow, transformRow, exportRow);
+        imageOptionsBox.setVisible(false); // Hidden initially
+        imageOptionsBox.managedProperty().bind(imageOptionsBox.visibleProperty()); // Take no space while hidden
+    }
+
+    private void applyFilter(DrawingCanvas drawingCanvas, PixelFilter filter) {
+        try {
+            drawingCanvas.filterImage(filter);
+        } catch (IllegalStateException ex) {
+            javafx.scene.control.Alert alert = new javafx.scene.control.Alert(javafx.scene.control.Alert.AlertType.INFORMATION);
+            alert.setTitle("Image Options");
+            alert.setHeaderText(null);
+            alert.setContentText(ex.getMessage());
+            alert.showAndWait();
+        }
+    }
+
+    private void applyTransform(DrawingCanvas drawingCanvas, ImageTransform transform) {
+        try {
+            drawingCanvas.transformImage(transform);
+        } catch (IllegalStateException ex) {
+            javafx.scene.control.Alert alert = new javafx.scene.control.Alert(javafx.scene.control.Alert.AlertType.INFORMATION);
+            alert.setTitle("Image Options");
+            alert.setHeaderText(null);
+            alert.setContentText(ex.getMessage());
+            alert.showAndWait();
+        }
+    }
+
     private void toggleImageOptions() {
-        boolean isVisible = lineOptionsHBox.isVisible();
-        lineOptionsHBox.setVisible(!isVisible);
+        boolean isVisible = imageOptionsBox.isVisible();
+        imageOptionsBox.setVisible(!isVisible);
     }
 
     private void toggleLineOptions() {
@@ -243,11 +460,15 @@ public class buttonClass {
         javafx.scene.control.Alert alert = new javafx.scene.control.Alert(javafx.scene.control.Alert.AlertType.INFORMATION);
         alert.setTitle("Help");
         alert.setHeaderText(null);
-        alert.setContentText("1. Press Image Options to view image-related settings.\n2. Use Insert Shapes to add shapes to your image.\n3. Adjust line width and color as needed.");
+        alert.setContentText("1. Press Image Options to view image-related settings.\n2. Use Insert Shapes to add shapes to your image.\n3. Adjust line width and color as needed.\n4. Scroll to zoom and drag with the right mouse button to pan.");
         alert.showAndWait();
     }
 
     public HBox getButtons() {
         return buttonBox;
     }
+
+    public VBox getImageOptions() {
+        return imageOptionsBox;
+    }
 }
\ No newline at end of file
@@ -1,83 +1,113 @@
 package com.example.imageeditorjaden;
 
 import javafx.application.Application;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
-import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.Slider;
 import javafx.scene.control.ColorPicker;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.layout.HBox;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.image.Image;
+import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
-import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.io.File;
 
+/**
+ * The editor window. Every open document lives in its own tab; the buttons,
+ * line options and autosave timer act on the tab that is shown.
+ */
 public class openImage extends Application {
 
-    private DrawingCanvas drawingCanvas;
-    private Canvas canvas;
+    private Stage primaryStage;
+    private TabPane tabPane; // One tab per open document
+    private final List<DocumentTab> documents = new CopyOnWriteArrayList<>(); // Also walked by the timer thread
+    private volatile DocumentTab activeDocument;
+    private buttonClass buttons;
+    private Slider lineWidthSlider;
+    private ColorPicker colorPicker;
+    private Slider fillToleranceSlider;
     private HBox lineOptionsHBox;
     private HBox buttonBox;
     private ScheduledExecutorService scheduler;
     private Label timerLabel;
-    private long timeRemaining = 60; // Time in seconds
+    private ProgressBar loadProgress; // Shown while the active document's image is being decoded
+    private static final long AUTOSAVE_IDLE_SECONDS = 10; // Idle time before unsaved changes are autosaved
     private boolean isTimerVisible = true; // Timer visibility
-    private File originalFile;
+    private Label hudLabel; // Performance statistics drawn over the canvas
+    private volatile boolean isHudVisible = false;
 
     @Override
     public void start(Stage primaryStage) {
+        this.primaryStage = primaryStage;
         primaryStage.setTitle("Image Opener");
 
-        // Create a Canvas for drawing
-        canvas = new Canvas(); // Initialize without size
-        drawingCanvas = new DrawingCanvas(canvas);
-
-        // Set up the size of the canvas to fill the window
-        canvas.widthProperty().bind(primaryStage.widthProperty());
-        canvas.heightProperty().bind(primaryStage.heightProperty().subtract(150)); // Adjust for button and timer height
+        // Documents are shown in tabs; each tab sizes its canvases to the window while shown
+        tabPane = new TabPane();
+        tabPane.getSelectionModel().selectedItemProperty().addListener((obs, oldTab, newTab) -> switchTab(oldTab, newTab));
+        hudLabel = new Label();
+        hudLabel.setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-text-fill: white; -fx-font-family: monospace; -fx-padding: 4;");
+        hudLabel.setMouseTransparent(true); // Never steals clicks from the canvas
+        hudLabel.setVisible(isHudVisible);
+        StackPane canvasStack = new StackPane(tabPane, hudLabel);
+        StackPane.setAlignment(hudLabel, Pos.BOTTOM_LEFT); // Keeps the tab headers clear
 
         // Create a Slider to adjust the line width
-        Slider lineWidthSlider = new Slider(1, 20, 2);
+        lineWidthSlider = new Slider(1, 20, 2);
         lineWidthSlider.setShowTickMarks(true);
         lineWidthSlider.setShowTickLabels(true);
         lineWidthSlider.setMajorTickUnit(1);
         lineWidthSlider.setMinorTickCount(1);
         lineWidthSlider.setBlockIncrement(1);
         lineWidthSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
-            drawingCanvas.setLineWidth(newVal.doubleValue());
+            getDrawingCanvas().setLineWidth(newVal.doubleValue());
         });
 
         // Create a Label for the line width slider
         Label lineWidthLabel = new Label("Line Width");
 
         // Create a ColorPicker to choose the line color
-        ColorPicker colorPicker = new ColorPicker(Color.BLACK);
-        colorPicker.setOnAction(e -> drawingCanvas.setLineColor(colorPicker.getValue()));
+        colorPicker = new ColorPicker(Color.BLACK);
+        colorPicker.setOnAction(e -> getDrawingCanvas().setLineColor(colorPicker.getValue()));
+
+        // Create a Slider for how different a color may be and still be filled by the paint bucket
+        fillToleranceSlider = new Slider(0, 255, 32);
+        fillToleranceSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
+            getDrawingCanvas().setFillTolerance(newVal.intValue());
+        });
+        Label fillToleranceLabel = new Label("Fill Tolerance");
 
         // Grouping line label, slider, and color picker into an HBox
         lineOptionsHBox = new HBox(10);
-        lineOptionsHBox.getChildren().addAll(lineWidthLabel, lineWidthSlider, colorPicker);
+        lineOptionsHBox.getChildren().addAll(lineWidthLabel, lineWidthSlider, colorPicker, fillToleranceLabel, fillToleranceSlider);
         lineOptionsHBox.setVisible(false); // Hidden initially
 
         // Create the buttonBox for image-related buttons
         buttonBox = new HBox(10);
 
         // Initialize Buttons with buttonClass
-        buttonClass buttons = new buttonClass(drawingCanvas, primaryStage, lineOptionsHBox, buttonBox, this);
+        buttons = new buttonClass(primaryStage, lineOptionsHBox, buttonBox, this);
 
         // Create VBox to hold all components
         VBox vbox = new VBox(10);
 
         // Timer Label
-        timerLabel = new Label("Autosave in: " + timeRemaining + "s");
+        timerLabel = new Label("Autosave in: " + AUTOSAVE_IDLE_SECONDS + "s");
         timerLabel.setVisible(isTimerVisible); // Set visibility
-        vbox.getChildren().addAll(timerLabel, buttons.getButtons(), lineOptionsHBox, canvas); // Added timerLabel above buttons
+        loadProgress = new ProgressBar(0);
+        loadProgress.setVisible(false); // Only shown while loading
+        HBox statusBox = new HBox(10, timerLabel, loadProgress);
+        vbox.getChildren().addAll(statusBox, buttons.getButtons(), lineOptionsHBox, buttons.getImageOptions(), canvasStack); // Added timerLabel above buttons
+
+        newDocument(); // Start with an empty tab to draw on
 
         // Create and start the timer
         startTimer();
@@ -88,6 +118,19 @@ public class openImage extends Application {
         primaryStage.show();
     }
 
+    /**
+     * Closes the journal and stops the timer when the window closes.
+     */
+    @Override
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        for (DocumentTab document : documents) {
+            document.close();
+        }
+    }
+
     /**
      * Starts the timer that counts down and triggers an autosave when it reaches zero.
      */
@@ -97,20 +140,21 @@ public class openImage extends Application {
     }
 
     /**
-     * Schedules the timer task to update the countdown and perform autosave.
+     * Schedules the timer task that syncs every document's journal and
+     * autosaves each one once its edits pause. The label shows the countdown
+     * of the tab that is shown.
      */
     private void scheduleTimerTask() {
         scheduler.scheduleAtFixedRate(() -> {
-            if (timeRemaining > 0) {
-                timeRemaining--;
-                updateTimerLabel();
-            } else {
-                System.out.println("Timer reached zero, attempting to autosave.");
-                // Use Platform.runLater to execute saveImage on the JavaFX thread
-                javafx.application.Platform.runLater(() -> {
-                    saveImage(); // Call your save function here
-                    resetTimer(); // Reset timer after saving
-                });
+            if (isHudVisible) {
+                String stats = hudText();
+                javafx.application.Platform.runLater(() -> hudLabel.setText(stats));
+            }
+            for (DocumentTab document : documents) {
+                String status = document.tick(AUTOSAVE_IDLE_SECONDS);
+                if (document == activeDocument) {
+                    updateTimerLabel(status);
+                }
             }
         }, 1, 1, TimeUnit.SECONDS);
     }
@@ -118,67 +162,127 @@ public class openImage extends Application {
     /**
      * Updates the timer label to show the remaining time.
      */
-    private void updateTimerLabel() {
-        javafx.application.Platform.runLater(() -> timerLabel.setText("Autosave in: " + timeRemaining + "s"));
+    private void updateTimerLabel(String text) {
+        javafx.application.Platform.runLater(() -> timerLabel.setText(text));
     }
 
     /**
-     * Resets the timer to the initial time.
+     * Saves the active document to its original file if it has one.
      */
-    public void resetTimer() {
-        timeRemaining = 60; // Reset to 60 seconds
-        updateTimerLabel();
+    public void saveImage() {
+        activeDocument.saveImage();
     }
 
     /**
-     * Saves the current drawing to the original file if it exists.
+     * Returns the drawing of the tab that is shown.
+     *
+     * @return The active drawing canvas.
      */
-    public void saveImage() {
-        if (originalFile != null) {
-            try {
-                // Call the save method of the DrawingCanvas
-                drawingCanvas.saveImage(originalFile);
-                notifyUser("Image has been autosaved!"); // Notify that it was saved
-            } catch (Exception e) {
-                e.printStackTrace();
-                notifyUser("Failed to autosave image: " + e.getMessage());
+    public DrawingCanvas getDrawingCanvas() {
+        return activeDocument.getDrawingCanvas();
+    }
+
+    /**
+     * Opens an image file in a tab. A file that is already open is shown
+     * instead, and the shown tab is reused if nothing is open in it.
+     *
+     * @param file The image file to open.
+     */
+    public void openFile(File file) {
+        for (DocumentTab document : documents) {
+            if (file.equals(document.getOriginalFile())) {
+                tabPane.getSelectionModel().select(document.getTab());
+                return;
             }
-        } else {
-            notifyUser("No original file to save! Please open an image first.");
         }
+        targetDocument().openFile(file);
     }
 
     /**
-     * Displays a notification to the user.
+     * Opens a project file in a tab, reusing the shown tab if nothing is open in it.
      *
-     * @param message The message to display in the alert.
+     * @param file The project file.
      */
-    private void notifyUser(String message) {
-        javafx.application.Platform.runLater(() -> {
-            javafx.scene.control.Alert alert = new javafx.scene.control.Alert(javafx.scene.control.Alert.AlertType.INFORMATION);
-            alert.setTitle("Autosave");
-            alert.setHeaderText(null);
-            alert.setContentText(message);
-            alert.showAndWait();
-        });
+    public void openProject(File file) {
+        targetDocument().openProject(file);
+    }
+
+    private DocumentTab targetDocument() {
+        return activeDocument.isBlank() ? activeDocument : newDocument();
     }
 
     /**
-     * Sets the original file that was opened.
+     * Adds an empty document in a new tab and shows it.
      *
-     * @param file The File object representing the original image file.
+     * @return The new document.
      */
-    public void setOriginalFile(File file) {
-        this.originalFile = file;
+    private DocumentTab newDocument() {
+        DocumentTab document = new DocumentTab();
+        documents.add(document);
+        document.getTab().setOnClosed(e -> closeDocument(document));
+        tabPane.getTabs().add(document.getTab());
+        tabPane.getSelectionModel().select(document.getTab());
+        return document;
+    }
+
+    private void closeDocument(DocumentTab document) {
+        documents.remove(document);
+        document.close();
+        if (documents.isEmpty()) {
+            newDocument(); // There is always a tab to draw on
+        }
+    }
+
+    /**
+     * Hides the previous tab, which may drop its image, and points the
+     * buttons, line options and progress bar at the new one.
+     */
+    private void switchTab(Tab oldTab, Tab newTab) {
+        DocumentTab previous = documentOf(oldTab);
+        if (previous != null) {
+            previous.hide();
+        }
+        DocumentTab next = documentOf(newTab);
+        if (next == null) {
+            return;
+        }
+        activeDocument = next;
+        DrawingCanvas drawingCanvas = next.getDrawingCanvas();
+        drawingCanvas.setLineWidth(lineWidthSlider.getValue());
+        drawingCanvas.setLineColor(colorPicker.getValue());
+        drawingCanvas.setFillTolerance((int) fillToleranceSlider.getValue());
+        buttons.applyTools(drawingCanvas);
+        loadProgress.progressProperty().bind(next.loadProgressProperty());
+        loadProgress.visibleProperty().bind(next.loadShownProperty());
+        next.show(primaryStage);
+    }
+
+    private DocumentTab documentOf(Tab tab) {
+        for (DocumentTab document : documents) {
+            if (document.getTab() == tab) {
+                return document;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Saves the active document to another file, which it is saved to from
+     * then on once written.
+     *
+     * @param file The file to write.
+     */
+    public void saveImageAs(File file) {
+        activeDocument.saveImageAs(file);
     }
 
     /**
-     * Retrieves the current original file.
+     * Retrieves the file the active document is saved to.
      *
      * @return The File object representing the original image file.
      */
     public File getOriginalFile() {
-        return originalFile; // Retrieve the current original file
+        return activeDocument.getOriginalFile(); // Retrieve the current original file
     }
 
     /**
@@ -190,11 +294,33 @@ public class openImage extends Application {
     }
 
     /**
-     * The main entry point for the JavaFX application.
+     * Toggles the performance HUD over the canvas. It is refreshed once a
+     * second while shown.
+     */
+    public void setHudVisibility() {
+        isHudVisible = !isHudVisible;
+        if (isHudVisible) {
+            hudLabel.setText(hudText());
+        }
+        hudLabel.setVisible(isHudVisible);
+    }
+
+    private static String hudText() {
+        return PerfStats.global().summary() + System.lineSeparator() + ImageCache.global().summary();
+    }
+
+    /**
+     * The main entry point for the JavaFX application. With --batch as the
+     * first argument the remaining arguments go to BatchRender and no window
+     * is opened.
      *
      * @param args Command-line arguments.
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchRender.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         launch(args);
     }
 }